@@ -0,0 +1,109 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Niklas Seyfarth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package mr.minecraft15.onlinetime.benchmark;
+
+import mr.minecraft15.onlinetime.api.OnlineTimeStorage;
+import mr.minecraft15.onlinetime.common.AccumulatingOnlineTimeStorage;
+import mr.minecraft15.onlinetime.common.ManualClock;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures session start/stop and flushes of {@link AccumulatingOnlineTimeStorage} on a fake clock, so every flush
+ * credits the same amount of time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AccumulatingOnlineTimeStorageBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int onlinePlayers;
+
+    private ManualClock clock;
+    private AccumulatingOnlineTimeStorage accumulator;
+    private UUID[] players;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        clock = new ManualClock(0);
+        accumulator = new AccumulatingOnlineTimeStorage(new DiscardingOnlineTimeStorage(), clock);
+        players = new UUID[onlinePlayers];
+        for (int i = 0; i < onlinePlayers; i++) {
+            players[i] = UUID.randomUUID();
+            accumulator.startAccumulating(players[i], clock.millis());
+        }
+    }
+
+    @Benchmark
+    public void startAndStop() throws Exception {
+        UUID player = players[ThreadLocalRandom.current().nextInt(players.length)];
+        clock.advance(1);
+        accumulator.stopAccumulatingAndSaveOnlineTime(player, clock.millis());
+        accumulator.startAccumulating(player, clock.millis());
+    }
+
+    @Benchmark
+    public void flush() throws Exception {
+        clock.advance(30_000);
+        accumulator.flushOnlineTimeCache();
+    }
+
+    @Benchmark
+    public OptionalLong getOnlineTime() throws Exception {
+        return accumulator.getOnlineTime(players[ThreadLocalRandom.current().nextInt(players.length)]);
+    }
+
+    private static final class DiscardingOnlineTimeStorage implements OnlineTimeStorage {
+
+        @Override
+        public OptionalLong getOnlineTime(UUID uuid) {
+            return OptionalLong.of(0);
+        }
+
+        @Override
+        public void addOnlineTime(UUID uuid, long additionalOnlineTime) {
+            Blackhole.consumeCPU(1);
+        }
+
+        @Override
+        public void addOnlineTimes(Map<UUID, Long> additionalOnlineTimes) {
+            Blackhole.consumeCPU(additionalOnlineTimes.size());
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
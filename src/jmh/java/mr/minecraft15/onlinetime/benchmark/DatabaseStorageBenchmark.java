@@ -0,0 +1,90 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Niklas Seyfarth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package mr.minecraft15.onlinetime.benchmark;
+
+import mr.minecraft15.onlinetime.common.DatabaseStorage;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how many rows per second {@link DatabaseStorage#addOnlineTimes(Map)} writes for different flush sizes.
+ * The {@code rows} counter is the interesting result, the primary score counts whole flushes.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DatabaseStorageBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int entries;
+
+    @Param({"500"})
+    public int batchSize;
+
+    private EmbeddedDatabase database;
+    private DatabaseStorage storage;
+    private Map<UUID, Long> flush;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Rows {
+        public long rows;
+    }
+
+    @Setup(Level.Trial)
+    public void startDatabase() throws Exception {
+        database = EmbeddedDatabase.start();
+        Properties properties = database.getStorageProperties();
+        properties.setProperty(DatabaseStorage.BATCH_SIZE_PROPERTY, Integer.toString(batchSize));
+        storage = new DatabaseStorage(properties);
+        database.truncateOnlineTimeTable();
+
+        flush = new HashMap<>();
+        for (int i = 0; i < entries; i++) {
+            flush.put(UUID.randomUUID(), 30_000L);
+        }
+        storage.addOnlineTimes(flush); // benchmark updates, the common case after the first flush
+    }
+
+    @TearDown(Level.Trial)
+    public void stopDatabase() throws Exception {
+        storage.close();
+        database.close();
+    }
+
+    @Benchmark
+    public void addOnlineTimes(Rows rows) throws Exception {
+        storage.addOnlineTimes(flush);
+        rows.rows += entries;
+    }
+}
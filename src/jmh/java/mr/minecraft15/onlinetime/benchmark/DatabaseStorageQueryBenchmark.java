@@ -0,0 +1,104 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Niklas Seyfarth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package mr.minecraft15.onlinetime.benchmark;
+
+import mr.minecraft15.onlinetime.common.DatabaseStorage;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures single player queries and updates of {@link DatabaseStorage} against an embedded MariaDB server, with
+ * statements prepared by the driver and with statements prepared once per connection on the server.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DatabaseStorageQueryBenchmark {
+
+    private static final int PLAYERS = 10_000;
+
+    @Param({"0", "250"})
+    private int statementCache;
+
+    private EmbeddedDatabase database;
+    private DatabaseStorage storage;
+    private UUID[] players;
+
+    @Setup(Level.Trial)
+    public void startDatabase() throws Exception {
+        database = EmbeddedDatabase.start();
+        Properties properties = database.getStorageProperties();
+        properties.setProperty(DatabaseStorage.STATEMENT_CACHE_PROPERTY, Integer.toString(statementCache));
+        storage = new DatabaseStorage(properties);
+        database.truncateOnlineTimeTable();
+
+        players = new UUID[PLAYERS];
+        Map<UUID, String> names = new HashMap<>();
+        Map<UUID, Long> times = new HashMap<>();
+        for (int i = 0; i < PLAYERS; i++) {
+            players[i] = UUID.randomUUID();
+            names.put(players[i], "player" + i);
+            times.put(players[i], 3600L);
+        }
+        storage.setEntries(names);
+        storage.addOnlineTimes(times);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopDatabase() throws Exception {
+        storage.close();
+        database.close();
+    }
+
+    private UUID randomPlayer() {
+        return players[ThreadLocalRandom.current().nextInt(players.length)];
+    }
+
+    @Benchmark
+    public OptionalLong getOnlineTime() throws Exception {
+        return storage.getOnlineTime(randomPlayer());
+    }
+
+    @Benchmark
+    public Optional<String> getName() throws Exception {
+        return storage.getName(randomPlayer());
+    }
+
+    @Benchmark
+    public Optional<UUID> getUuid() throws Exception {
+        return storage.getUuid("player" + ThreadLocalRandom.current().nextInt(PLAYERS));
+    }
+
+    @Benchmark
+    public void addOnlineTime() throws Exception {
+        storage.addOnlineTime(randomPlayer(), 30L);
+    }
+}
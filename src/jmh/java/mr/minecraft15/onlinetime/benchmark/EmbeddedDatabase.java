@@ -0,0 +1,87 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Niklas Seyfarth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package mr.minecraft15.onlinetime.benchmark;
+
+import ch.vorburger.exec.ManagedProcessException;
+import ch.vorburger.mariadb4j.DB;
+import ch.vorburger.mariadb4j.DBConfigurationBuilder;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+/**
+ * Embedded MariaDB server for benchmarks that need a real database behind {@link mr.minecraft15.onlinetime.common.DatabaseStorage}.
+ */
+final class EmbeddedDatabase implements AutoCloseable {
+
+    private static final String DATABASE_NAME = "onlinetime_benchmark";
+
+    private final DB database;
+    private final int port;
+
+    private EmbeddedDatabase(DB database, int port) {
+        this.database = database;
+        this.port = port;
+    }
+
+    static EmbeddedDatabase start() throws ManagedProcessException, SQLException {
+        DBConfigurationBuilder configuration = DBConfigurationBuilder.newBuilder();
+        configuration.setPort(0);
+        if ("root".equals(System.getProperty("user.name"))) {
+            configuration.addArg("--user=root");
+        }
+        DB database = DB.newEmbeddedDB(configuration.build());
+        database.start();
+        EmbeddedDatabase embeddedDatabase = new EmbeddedDatabase(database, configuration.getPort());
+        embeddedDatabase.execute("CREATE DATABASE IF NOT EXISTS `" + DATABASE_NAME + "`");
+        return embeddedDatabase;
+    }
+
+    Properties getStorageProperties() {
+        Properties properties = new Properties();
+        properties.setProperty("jdbcUrl", "jdbc:mariadb://localhost:" + port + "/" + DATABASE_NAME);
+        properties.setProperty("username", "root");
+        return properties;
+    }
+
+    void execute(String sql) throws SQLException {
+        try (Connection connection = DriverManager.getConnection("jdbc:mariadb://localhost:" + port + "/", "root", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    void truncateOnlineTimeTable() throws SQLException {
+        execute("TRUNCATE TABLE `" + DATABASE_NAME + "`.`online_time`");
+    }
+
+    @Override
+    public void close() throws ManagedProcessException {
+        database.stop();
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Niklas Seyfarth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package mr.minecraft15.onlinetime.benchmark;
+
+import mr.minecraft15.onlinetime.common.FileOnlineTimeStorage;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link FileOnlineTimeStorage#addOnlineTimes(Map)} on a YAML provider stand-in that already holds
+ * {@code storedPlayers} entries.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FileOnlineTimeStorageBenchmark {
+
+    @Param({"1000", "10000"})
+    public int storedPlayers;
+
+    @Param({"10", "100", "1000"})
+    public int flushedPlayers;
+
+    private FileOnlineTimeStorage storage;
+    private Map<UUID, Long> flush;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        storage = new FileOnlineTimeStorage(new YamlFileStorageProviderStandIn());
+        Map<UUID, Long> initial = new HashMap<>();
+        for (int i = 0; i < storedPlayers; i++) {
+            initial.put(UUID.randomUUID(), 3600L);
+        }
+        storage.addOnlineTimes(initial);
+
+        flush = new HashMap<>();
+        for (UUID uuid : initial.keySet()) {
+            if (flush.size() == flushedPlayers) {
+                break;
+            }
+            flush.put(uuid, 30L);
+        }
+    }
+
+    @Benchmark
+    public void addOnlineTimes() throws Exception {
+        storage.addOnlineTimes(flush);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Niklas Seyfarth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package mr.minecraft15.onlinetime.benchmark;
+
+import mr.minecraft15.onlinetime.common.Localization;
+import mr.minecraft15.onlinetime.common.TimeParser;
+import mr.minecraft15.onlinetime.common.TimeUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parsing of time arguments and formatting of online times.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimeBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class ParseState {
+
+        @Param({"77", "4h 3min", "28 days 1 hour", "1y 2 months 3w 4d 5h 6min 7s"})
+        public String representation;
+
+        private TimeParser parser;
+
+        @Setup
+        public void setUp() {
+            parser = TimeParser.builder()
+                    .addUnit(1, "s", "sec", "second", "seconds")
+                    .addUnit(60, "min", "minute", "minutes")
+                    .addUnit(60 * 60, "h", "hour", "hours")
+                    .addUnit(60 * 60 * 24, "d", "day", "days")
+                    .addUnit(60 * 60 * 24 * 7, "w", "week", "weeks")
+                    .addUnit(60 * 60 * 24 * 30, "m", "month", "months")
+                    .addUnit(60 * 60 * 24 * 30 * 12, "y", "year", "years")
+                    .build();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class FormatState {
+
+        @Param({"59", "439620", "31536000"})
+        public long seconds;
+
+        private Localization localization;
+
+        @Setup
+        public void setUp() {
+            Map<String, String> translations = new HashMap<>();
+            for (String unit : new String[] {"second", "minute", "hour", "day", "week", "month", "year"}) {
+                translations.put("unit." + unit + ".singular", unit);
+                translations.put("unit." + unit + ".plural", unit + "s");
+            }
+            localization = new Localization(translations);
+        }
+    }
+
+    @Benchmark
+    public OptionalLong parseToSeconds(ParseState state) {
+        return state.parser.parseToSeconds(state.representation);
+    }
+
+    @Benchmark
+    public String formatTime(FormatState state) {
+        return TimeUtil.formatTime(state.seconds, state.localization);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Niklas Seyfarth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package mr.minecraft15.onlinetime.benchmark;
+
+import mr.minecraft15.onlinetime.api.FileStorageProvider;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.StringWriter;
+import java.util.*;
+
+/**
+ * In-memory stand-in for the platform YAML providers. Like them it serializes the whole document after every write,
+ * but into memory instead of a file, so benchmarks do not depend on disk speed.
+ */
+final class YamlFileStorageProviderStandIn implements FileStorageProvider {
+
+    private final Map<String, Object> storage = new LinkedHashMap<>();
+    private final Yaml yaml;
+    private long writtenCharacters;
+
+    YamlFileStorageProviderStandIn() {
+        DumperOptions options = new DumperOptions();
+        options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+        this.yaml = new Yaml(options);
+    }
+
+    @Override
+    public synchronized Object read(String path) {
+        return storage.get(path);
+    }
+
+    @Override
+    public synchronized Map<String, ?> read(Set<String> paths) {
+        Map<String, Object> data = new HashMap<>();
+        for (String path : paths) {
+            data.put(path, storage.get(path));
+        }
+        return data;
+    }
+
+    @Override
+    public synchronized void write(String path, Object data) {
+        storage.put(path, data);
+        save();
+    }
+
+    @Override
+    public synchronized void delete(String path) {
+        storage.remove(path);
+        save();
+    }
+
+    @Override
+    public synchronized Map<String, ?> readAll() {
+        return new HashMap<>(storage);
+    }
+
+    @Override
+    public synchronized void writeAll(Map<String, ?> data) {
+        storage.putAll(data);
+        save();
+    }
+
+    private void save() {
+        StringWriter writer = new StringWriter();
+        yaml.dump(storage, writer);
+        writtenCharacters += writer.getBuffer().length();
+    }
+
+    synchronized long getWrittenCharacters() {
+        return writtenCharacters;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -26,6 +26,7 @@ package mr.minecraft15.onlinetime.api;
 
 import java.util.Map;
 import java.util.Set;
+import java.util.function.BiConsumer;
 
 public interface FileStorageProvider extends AutoCloseable {
 
@@ -39,6 +40,17 @@ public interface FileStorageProvider extends AutoCloseable {
 
     Map<String, ?> readAll() throws StorageException;
 
+    /**
+     * Pass every path and its value to the consumer without copying the data first. The provider may block writes
+     * while visiting, so the consumer must not write to this provider.
+     *
+     * @param consumer receives every path and value
+     * @throws StorageException if the data could not be read
+     */
+    default void forEach(BiConsumer<String, Object> consumer) throws StorageException {
+        readAll().forEach(consumer);
+    }
+
     void writeAll(Map<String, ?> data) throws StorageException;
 
     void close() throws StorageException;
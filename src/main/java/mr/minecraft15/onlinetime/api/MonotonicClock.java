@@ -0,0 +1,65 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Niklas Seyfarth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package mr.minecraft15.onlinetime.api;
+
+/**
+ * Source of time for measuring durations. Unlike the wall clock it never jumps when the system time is adjusted.
+ */
+public interface MonotonicClock {
+
+    /**
+     * Current time in milliseconds. Only the difference between two values of the same clock is meaningful.
+     *
+     * @return monotonic time in milliseconds
+     */
+    long millis();
+
+    /**
+     * Current wall clock time, used to exchange points in time with other servers.
+     *
+     * @return milliseconds since the unix epoch
+     */
+    long wallMillis();
+
+    /**
+     * Convert a wall clock time, e.g. received from another server, to this clock's time line.
+     *
+     * @param wallMillis milliseconds since the unix epoch
+     * @return the corresponding monotonic time
+     */
+    default long fromWallMillis(long wallMillis) {
+        return millis() - (wallMillis() - wallMillis);
+    }
+
+    /**
+     * Convert a time of this clock to wall clock time, e.g. to send it to another server.
+     *
+     * @param millis monotonic time of this clock
+     * @return milliseconds since the unix epoch
+     */
+    default long toWallMillis(long millis) {
+        return wallMillis() - (millis() - millis);
+    }
+}
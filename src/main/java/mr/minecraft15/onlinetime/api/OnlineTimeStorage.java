@@ -50,8 +50,13 @@ public interface OnlineTimeStorage extends AutoCloseable {
 
     /**
      * Increase the time in seconds that the players identified by the uuids have played by given amount and write the result back to storage.
+     * <p>
+     * This is the bulk write used for flushes. Implementations should write all changes together where the storage allows it
+     * and may split them into several transactions, but every single player's change is either applied completely or not at all.
+     * If some transactions were written before one failed, a {@link PartialWriteException} tells which changes were not.
      *
      * @param additionalOnlineTimes players and their amount to increase the online time by
+     * @throws PartialWriteException if only some of the changes were written
      * @throws StorageException wrapping exceptions of the underlying storage implementation
      */
     void addOnlineTimes(Map<UUID, Long> additionalOnlineTimes) throws StorageException;
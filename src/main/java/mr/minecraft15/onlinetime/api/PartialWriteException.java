@@ -0,0 +1,57 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Niklas Seyfarth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package mr.minecraft15.onlinetime.api;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Thrown by a bulk write that was split into several transactions when some of them were written and others failed.
+ */
+public class PartialWriteException extends StorageException {
+
+    private static final long serialVersionUID = -3170584122983460117L;
+
+    private final Set<UUID> unwritten;
+
+    /**
+     * @param cause the failure of the first transaction that was not written
+     * @param unwritten players whose changes were not written
+     */
+    public PartialWriteException(Throwable cause, Set<UUID> unwritten) {
+        super("only part of the changes were written", cause);
+        this.unwritten = Collections.unmodifiableSet(new HashSet<>(Objects.requireNonNull(unwritten)));
+    }
+
+    /**
+     * @return players whose changes were not written, changes of all other players were
+     */
+    public Set<UUID> getUnwritten() {
+        return unwritten;
+    }
+}
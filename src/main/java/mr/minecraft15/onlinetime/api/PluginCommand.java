@@ -24,7 +24,22 @@
 
 package mr.minecraft15.onlinetime.api;
 
+import java.util.Collections;
+import java.util.List;
+
 public interface PluginCommand {
 
     void execute(PluginCommandSender sender, String... arguments);
+
+    /**
+     * Suggest values for the last argument. This is called for every key stroke, usually on the main thread, so it
+     * must not access storage.
+     *
+     * @param sender the sender typing the command
+     * @param arguments the arguments typed so far, the last one may be incomplete
+     * @return suggestions for the last argument
+     */
+    default List<String> tabComplete(PluginCommandSender sender, String... arguments) {
+        return Collections.emptyList();
+    }
 }
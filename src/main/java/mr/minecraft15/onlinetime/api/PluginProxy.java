@@ -27,6 +27,8 @@ package mr.minecraft15.onlinetime.api;
 import de.themoep.minedown.MineDown;
 import mr.minecraft15.onlinetime.common.Localization;
 
+import java.io.File;
+import java.util.List;
 import java.util.Optional;
 import java.util.logging.Logger;
 
@@ -63,6 +65,13 @@ public interface PluginProxy {
      */
     Logger getLogger();
 
+    /**
+     * Get the plugins data folder.
+     *
+     * @return folder containing configuration and file storage
+     */
+    File getDataFolder();
+
     /**
      * Get the scheduler.
      *
@@ -80,6 +89,16 @@ public interface PluginProxy {
      */
     Optional<PlayerData> findPlayer(String identifier);
 
+    /**
+     * Find names of online and known players starting with the given prefix, ignoring case. Only names held in memory
+     * are searched, so this is fast enough for tab completion.
+     *
+     * @param prefix start of the names
+     * @param limit maximum number of names to return
+     * @return the first matching names in alphabetical order
+     */
+    List<String> findPlayerNames(String prefix, int limit);
+
     /**
      * Apply the defined format for messages to the raw message. Usually this adds the plugins prefix for players to
      * identify the chat messages sender.
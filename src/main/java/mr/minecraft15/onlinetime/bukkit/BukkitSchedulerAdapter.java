@@ -46,7 +46,7 @@ public class BukkitSchedulerAdapter implements PluginScheduler {
 
     @Override
     public PluginTask runAsyncOnceLater(long delay, Runnable task) {
-        return new BukkitTaskAdapter(scheduler.runTaskLater(plugin, task, delay * 20));
+        return new BukkitTaskAdapter(scheduler.runTaskLaterAsynchronously(plugin, task, delay * 20));
     }
 
     @Override
@@ -25,7 +25,10 @@
 package mr.minecraft15.onlinetime.bukkit;
 
 import mr.minecraft15.onlinetime.api.FileStorageProvider;
+import mr.minecraft15.onlinetime.api.PluginScheduler;
 import mr.minecraft15.onlinetime.api.StorageException;
+import mr.minecraft15.onlinetime.common.DeferredFileSaver;
+import mr.minecraft15.onlinetime.common.FileStorageJournal;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.plugin.Plugin;
 
@@ -38,40 +41,85 @@ import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
 
 public class BukkitYamlFileStorageProvider implements FileStorageProvider {
 
     private final File yamlFile;
     private final YamlConfiguration storage;
 
+    private final FileStorageJournal journal;
+    private final DeferredFileSaver saver;
+
     private final ReadWriteLock rwLock;
     private final AtomicBoolean closed;
 
-    public BukkitYamlFileStorageProvider(Plugin plugin, String storageFilePath) throws StorageException {
-        this.yamlFile = new File(plugin.getDataFolder(), storageFilePath);
+    /**
+     * Create a storage backed by a yaml file in the plugins data folder.
+     *
+     * @param plugin the plugin
+     * @param storageFilePath file path relative to the data folder
+     * @param scheduler scheduler to save the file asynchronously
+     * @param saveDelay seconds to collect changes before the file is saved, zero to save on every change
+     * @throws StorageException if the file could not be created or loaded
+     */
+    public BukkitYamlFileStorageProvider(Plugin plugin, String storageFilePath, PluginScheduler scheduler, long saveDelay) throws StorageException {
+        this(saveResourceIfNotExists(plugin, storageFilePath), scheduler, saveDelay, plugin.getLogger());
+    }
+
+    /**
+     * Create a storage backed by a yaml file, e.g. when running without a server.
+     *
+     * @param yamlFile the storage file, an empty file is created if it does not exist
+     * @param scheduler scheduler to save the file asynchronously
+     * @param saveDelay seconds to collect changes before the file is saved, zero to save on every change
+     * @param logger logger for problems while saving in the background
+     * @throws StorageException if the file could not be created or loaded
+     */
+    public BukkitYamlFileStorageProvider(File yamlFile, PluginScheduler scheduler, long saveDelay, Logger logger) throws StorageException {
+        this.yamlFile = Objects.requireNonNull(yamlFile);
 
         this.rwLock = new ReentrantReadWriteLock();
         this.closed = new AtomicBoolean(false);
 
-        createFileIfNotExists(plugin, storageFilePath);
+        createFileIfNotExists();
 
         this.storage = YamlConfiguration.loadConfiguration(yamlFile);
+        this.journal = new FileStorageJournal(new File(yamlFile.getPath() + ".journal"));
+        this.saver = new DeferredFileSaver(yamlFile, this::saveToString, journal, scheduler, saveDelay, logger);
+        restoreUnsavedChanges(logger);
     }
 
-    private void createFileIfNotExists(Plugin plugin, String storageFilePath) throws StorageException {
+    private static File saveResourceIfNotExists(Plugin plugin, String storageFilePath) {
+        File storageFile = new File(plugin.getDataFolder(), storageFilePath);
+        if (!storageFile.exists() && null != plugin.getResource(storageFilePath)) {
+            plugin.saveResource(storageFilePath, false);
+        }
+        return storageFile;
+    }
+
+    private void createFileIfNotExists() throws StorageException {
         if (!yamlFile.exists()) {
-            if (null == plugin.getResource(storageFilePath)) {
-                try {
-                    yamlFile.createNewFile();
-                } catch (IOException ex) {
-                    throw new StorageException("could not create stoage file", ex);
-                }
-            } else {
-                plugin.saveResource(storageFilePath, false);
+            try {
+                yamlFile.createNewFile();
+            } catch (IOException ex) {
+                throw new StorageException("could not create stoage file", ex);
             }
         }
     }
 
+    private void restoreUnsavedChanges(Logger logger) throws StorageException {
+        Map<String, Object> changes = journal.replay();
+        if (!changes.isEmpty()) {
+            for (Map.Entry<String, Object> change : changes.entrySet()) {
+                storage.set(change.getKey(), change.getValue());
+            }
+            saver.save();
+            logger.info("restored " + changes.size() + " unsaved changes of " + yamlFile.getName());
+        }
+    }
+
     @Override
     public Object read(String path) throws StorageException {
         Objects.requireNonNull(path);
@@ -112,13 +160,13 @@ public class BukkitYamlFileStorageProvider implements FileStorageProvider {
         rwLock.writeLock().lock();
         try {
             checkClosed();
+            journal.append(path, data);
             storage.set(path, data);
-            storage.save(yamlFile);
-        } catch (IOException ex) {
-            throw new StorageException(ex);
         } finally {
             rwLock.writeLock().unlock();
         }
+        journal.force();
+        saver.markDirty();
     }
 
     @Override
@@ -143,6 +191,21 @@ public class BukkitYamlFileStorageProvider implements FileStorageProvider {
         }
     }
 
+    @Override
+    public void forEach(BiConsumer<String, Object> consumer) throws StorageException {
+        Objects.requireNonNull(consumer);
+        checkClosed();
+        rwLock.readLock().lock();
+        try {
+            checkClosed();
+            for (String key : storage.getKeys(true)) {
+                consumer.accept(key, storage.get(key));
+            }
+        } finally {
+            rwLock.readLock().unlock();
+        }
+    }
+
     @Override
     public void writeAll(Map<String, ?> data) throws StorageException {
         Objects.requireNonNull(data);
@@ -150,15 +213,25 @@ public class BukkitYamlFileStorageProvider implements FileStorageProvider {
         rwLock.writeLock().lock();
         try {
             checkClosed();
+            journal.append(data);
             for (Map.Entry<String, ?> entry : data.entrySet()) {
                 storage.set(entry.getKey(), entry.getValue());
             }
-            storage.save(yamlFile);
-        } catch (IOException ex) {
-            throw new StorageException(ex);
         } finally {
             rwLock.writeLock().unlock();
         }
+        journal.force();
+        saver.markDirty();
+    }
+
+    private String saveToString() throws StorageException {
+        rwLock.readLock().lock();
+        try {
+            journal.checkpoint();
+            return storage.saveToString();
+        } finally {
+            rwLock.readLock().unlock();
+        }
     }
 
     private void checkClosed() throws StorageException {
@@ -174,11 +247,14 @@ public class BukkitYamlFileStorageProvider implements FileStorageProvider {
         }
         rwLock.writeLock().lock();
         try {
-            if (closed.compareAndSet(false, true)) {
-                // nothing to do on close
-            }
+            closed.set(true);
         } finally {
             rwLock.writeLock().unlock();
         }
+        try {
+            saver.close();
+        } finally {
+            journal.close();
+        }
     }
 }
@@ -24,6 +24,7 @@
 
 package mr.minecraft15.onlinetime.bukkit;
 
+import mr.minecraft15.onlinetime.api.MonotonicClock;
 import mr.minecraft15.onlinetime.api.PluginProxy;
 import mr.minecraft15.onlinetime.common.OnlineTimeAccumulator;
 import mr.minecraft15.onlinetime.api.StorageException;
@@ -40,16 +41,18 @@ public class OnlineTimeAccumulatorBukkitListener implements Listener {
 
     private final PluginProxy plugin;
     private final OnlineTimeAccumulator timeAccumulator;
+    private final MonotonicClock clock;
 
-    public OnlineTimeAccumulatorBukkitListener(PluginProxy plugin, OnlineTimeAccumulator timeAccumulator) {
+    public OnlineTimeAccumulatorBukkitListener(PluginProxy plugin, OnlineTimeAccumulator timeAccumulator, MonotonicClock clock) {
         this.plugin = plugin;
         this.timeAccumulator = timeAccumulator;
+        this.clock = clock;
     }
 
     @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
     public void onPlayerJoin(PlayerJoinEvent event) {
         final UUID uuid = event.getPlayer().getUniqueId();
-        final long now = System.currentTimeMillis();
+        final long now = clock.millis();
         plugin.getScheduler().runAsyncOnce(() -> {
             try {
                 timeAccumulator.startAccumulating(uuid, now);
@@ -62,7 +65,7 @@ public class OnlineTimeAccumulatorBukkitListener implements Listener {
     @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
     public void onPlayerQuit(PlayerQuitEvent event) {
         final UUID uuid = event.getPlayer().getUniqueId();
-        final long now = System.currentTimeMillis();
+        final long now = clock.millis();
         plugin.getScheduler().runAsyncOnce(() -> {
             try {
                 timeAccumulator.stopAccumulatingAndSaveOnlineTime(uuid, now);
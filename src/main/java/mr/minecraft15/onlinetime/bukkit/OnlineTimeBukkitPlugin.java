@@ -36,23 +36,26 @@ import org.bukkit.plugin.PluginManager;
 import org.bukkit.plugin.ServicePriority;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.plugin.messaging.Messenger;
-import org.bukkit.scheduler.BukkitTask;
 
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
+import java.util.stream.Collectors;
 
 public class OnlineTimeBukkitPlugin extends JavaPlugin implements PluginProxy {
 
     private static final int CONFIG_VERSION = 2;
+    private static final long STORAGE_SHUTDOWN_TIMEOUT = 10;
 
     private boolean loadSuccessful = false;
     private String mode;
 
     private PluginScheduler scheduler;
+    private MonotonicClock clock;
 
     private MineDown messageFormat;
     private String defaultLanguage;
@@ -62,21 +65,41 @@ public class OnlineTimeBukkitPlugin extends JavaPlugin implements PluginProxy {
     private BaseComponent[] serverName;
 
     private long saveInterval;
+    private long fileSaveDelay;
+    private int fileShards;
+    private boolean fileLazyLoad;
+    private long cacheSize;
+    private long cacheExpireAfterWrite;
+    private long cacheExpireAfterAccess;
+    private int storageThreads;
+    private int storageQueueSize;
+    private boolean storageVirtualThreads;
     private String storageMethod;
 
     private OnlineTimeStorage onlineTimeStorage;
     private OnlineTimeAccumulator onlineTimeAccumulator;
     private PlayerNameStorage playerNameStorage;
+    private BulkOnlineTimeStorage bulkOnlineTimeStorage;
+    private OnlineTimeStorageCache onlineTimeStorageCache;
+    private PlayerNameStorageCache playerNameStorageCache;
 
-    private BukkitTask flushCacheTask;
+    private StorageExecutor storageExecutor;
+    private AsyncStorage asyncStorage;
+
+    private PluginTask flushCacheTask;
 
     @Override
     public void onLoad() {
         this.scheduler = new BukkitSchedulerAdapter(this, getServer().getScheduler());
+        this.clock = new SystemMonotonicClock();
 
         boolean success = false;
         try {
-            success = loadConfig() && loadStorage();
+            success = loadConfig();
+            if (success) {
+                createStorageExecutor();
+                success = loadStorage();
+            }
         } finally {
             loadSuccessful = success;
         }
@@ -93,13 +116,17 @@ public class OnlineTimeBukkitPlugin extends JavaPlugin implements PluginProxy {
         PluginManager pluginManager = getServer().getPluginManager();
         switch (mode) {
             case "standalone":
+                asyncStorage = new AsyncStorage(onlineTimeStorage, playerNameStorage, storageExecutor, scheduler::runAsyncOnce);
                 getCommand("onlinetime").setExecutor(new PluginCommandBukkitAdapter(
-                        new OnlineTimeCommand(this, localization, onlineTimeStorage), this));
+                        new OnlineTimeCommand(this, localization, asyncStorage), this));
                 getCommand("onlinetimeadmin").setExecutor(new PluginCommandBukkitAdapter(
-                        new OnlineTimeAdminCommand(this, localization, parser, onlineTimeStorage), this));
-                pluginManager.registerEvents(new PlayerNameBukkitListener(this, playerNameStorage), this);
-                pluginManager.registerEvents(new OnlineTimeAccumulatorBukkitListener(this, onlineTimeAccumulator), this);
-                flushCacheTask = getServer().getScheduler().runTaskTimerAsynchronously(this, this::flushOnlineTimeCache, saveInterval * 10, saveInterval * 20);
+                        new OnlineTimeAdminCommand(this, localization, parser, onlineTimeStorage, this::openMigrationBackend), this));
+                pluginManager.registerEvents(new PlayerNameBukkitListener(this, asyncStorage), this);
+                pluginManager.registerEvents(new OnlineTimeAccumulatorBukkitListener(this, onlineTimeAccumulator, clock), this);
+                flushCacheTask = scheduler.scheduleAsync(saveInterval / 2, saveInterval, this::flushOnlineTimeCache);
+                if (onlineTimeStorageCache != null) {
+                    onlineTimeStorageCache.startFlushing(this, saveInterval);
+                }
                 break;
             case "slave":
                 Messenger messenger = getServer().getMessenger();
@@ -144,6 +171,15 @@ public class OnlineTimeBukkitPlugin extends JavaPlugin implements PluginProxy {
         this.messageFormat = new MineDown(config.getString("messageformat"));
         this.serverName = new MineDown(config.getString("servername", "this server")).toComponent();
         this.saveInterval = config.getLong("saveinterval", 30);
+        this.fileSaveDelay = config.getLong("filesavedelay", 5);
+        this.fileShards = config.getInt("fileshards", 1);
+        this.fileLazyLoad = config.getBoolean("filelazyload", false);
+        this.cacheSize = config.getLong("cachesize", 10000);
+        this.cacheExpireAfterWrite = config.getLong("cacheexpireafterwrite", 3600);
+        this.cacheExpireAfterAccess = config.getLong("cacheexpireafteraccess", 900);
+        this.storageThreads = Math.max(1, config.getInt("storagethreads", 4));
+        this.storageQueueSize = Math.max(1, config.getInt("storagequeuesize", 1000));
+        this.storageVirtualThreads = config.getBoolean("storagevirtualthreads", false);
 
         switch (mode) {
             case "standalone":
@@ -163,6 +199,7 @@ public class OnlineTimeBukkitPlugin extends JavaPlugin implements PluginProxy {
         }
         FileConfiguration langConfig = YamlConfiguration.loadConfiguration(translationFile);
         langConfig.setDefaults(YamlConfiguration.loadConfiguration(getTextResource("messages.yml")));
+        langConfig.options().copyDefaults(true); // messages added by updates are missing in existing files
 
         defaultLanguage = config.getString("language");
         this.localization = loadLocalization(langConfig, defaultLanguage);
@@ -277,6 +314,13 @@ public class OnlineTimeBukkitPlugin extends JavaPlugin implements PluginProxy {
                 case "file":
                     loadYamlStorage();
                     return true;
+                case "binlog":
+                    loadBinaryLogStorage();
+                    return true;
+                case "mmap":
+                case "mapped":
+                    loadMappedStorage();
+                    return true;
                 case "sql":
                 case "mysql":
                 case "mariadb":
@@ -297,13 +341,51 @@ public class OnlineTimeBukkitPlugin extends JavaPlugin implements PluginProxy {
     }
 
     private void loadYamlStorage() throws StorageException {
-        this.playerNameStorage = new FilePlayerNameStorage(new BukkitYamlFileStorageProvider(this, "names.yml"));
-        AccumulatingOnlineTimeStorage accumulatingTimeStorage = new AccumulatingOnlineTimeStorage(new FileOnlineTimeStorage(new BukkitYamlFileStorageProvider(this, "time.yml")));
+        this.playerNameStorage = new FilePlayerNameStorage(createFileStorage("names"));
+        this.bulkOnlineTimeStorage = new FileOnlineTimeStorage(createFileStorage("time"));
+        AccumulatingOnlineTimeStorage accumulatingTimeStorage = new AccumulatingOnlineTimeStorage(bulkOnlineTimeStorage, clock);
+        this.onlineTimeStorage = accumulatingTimeStorage;
+        this.onlineTimeAccumulator = accumulatingTimeStorage;
+    }
+
+    private void loadMappedStorage() throws StorageException {
+        this.playerNameStorage = new FilePlayerNameStorage(createFileStorage("names"));
+        this.bulkOnlineTimeStorage = new MappedOnlineTimeStorage(getDataFolder());
+        AccumulatingOnlineTimeStorage accumulatingTimeStorage = new AccumulatingOnlineTimeStorage(bulkOnlineTimeStorage, clock);
+        this.onlineTimeStorage = accumulatingTimeStorage;
+        this.onlineTimeAccumulator = accumulatingTimeStorage;
+    }
+
+    private FileStorageProvider createFileStorage(String name) throws StorageException {
+        ShardedFileStorageProvider.ProviderFactory factory = fileName -> new BukkitYamlFileStorageProvider(this, fileName, scheduler, fileSaveDelay);
+        if (fileLazyLoad) {
+            ShardedFileStorageProvider.ProviderFactory loader = factory;
+            factory = fileName -> new LazyFileStorageProvider(getDataFolder(), fileName, loader);
+        }
+        return ShardedFileStorageProvider.open(getDataFolder(), name, "yml", fileShards, factory);
+    }
+
+    private void loadBinaryLogStorage() throws StorageException {
+        BinaryLogStorage storage = new BinaryLogStorage(getDataFolder());
+        this.playerNameStorage = storage;
+        this.bulkOnlineTimeStorage = storage;
+        AccumulatingOnlineTimeStorage accumulatingTimeStorage = new AccumulatingOnlineTimeStorage(storage, clock);
         this.onlineTimeStorage = accumulatingTimeStorage;
         this.onlineTimeAccumulator = accumulatingTimeStorage;
     }
 
     private void loadMysqlStorage() throws StorageException {
+        DatabaseStorage storage = new DatabaseStorage(loadDatabaseProperties());
+        this.bulkOnlineTimeStorage = storage;
+        this.playerNameStorageCache = new PlayerNameStorageCache(storage, createCache(), createCache());
+        this.playerNameStorage = playerNameStorageCache;
+        this.onlineTimeStorageCache = new OnlineTimeStorageCache(storage, createCache());
+        AccumulatingOnlineTimeStorage accumulatingTimeStorage = new AccumulatingOnlineTimeStorage(onlineTimeStorageCache, clock);
+        this.onlineTimeStorage = accumulatingTimeStorage;
+        this.onlineTimeAccumulator = accumulatingTimeStorage;
+    }
+
+    private Properties loadDatabaseProperties() throws StorageException {
         Properties properties = new Properties();
 
         File databasePropertiesFile = new File(getDataFolder(), "database.properties");
@@ -317,11 +399,38 @@ public class OnlineTimeBukkitPlugin extends JavaPlugin implements PluginProxy {
         } catch (IOException ex) {
             throw new StorageException(ex);
         }
-        DatabaseStorage storage = new DatabaseStorage(properties);
-        this.playerNameStorage = storage;
-        AccumulatingOnlineTimeStorage accumulatingTimeStorage = new AccumulatingOnlineTimeStorage(storage);
-        this.onlineTimeStorage = accumulatingTimeStorage;
-        this.onlineTimeAccumulator = accumulatingTimeStorage;
+        return properties;
+    }
+
+    private StorageMigration.Backend openMigrationBackend(String storage, boolean withNames) throws StorageException {
+        String activeStorage = StorageMigration.canonicalName(storageMethod).orElse(null);
+        StorageMigration.Backend active = null;
+        if (bulkOnlineTimeStorage != null) {
+            if (storage.equals(activeStorage)) {
+                // the time of running sessions must be in storage before it is read
+                onlineTimeAccumulator.flushOnlineTimeCache();
+            }
+            // migrated times must not be hidden by times cached before
+            BulkOnlineTimeStorage activeOnlineTimes = onlineTimeStorageCache == null ? bulkOnlineTimeStorage
+                    : onlineTimeStorageCache.bulkView(bulkOnlineTimeStorage);
+            active = new StorageMigration.Backend(activeOnlineTimes, false, playerNameStorage, false);
+        }
+        return StorageMigration.openBackend(storage, withNames, active, activeStorage, getDataFolder(),
+                this::createFileStorage, this::loadDatabaseProperties);
+    }
+
+    private <K, V> BoundedExpiringCache<K, V> createCache() {
+        return new BoundedExpiringCache<>(cacheSize, cacheExpireAfterWrite, cacheExpireAfterAccess, TimeUnit.SECONDS);
+    }
+
+    private void logCacheStatistics() {
+        if (onlineTimeStorageCache != null) {
+            getLogger().info("online time cache: " + onlineTimeStorageCache.getCache().statistics());
+        }
+        if (playerNameStorageCache != null) {
+            getLogger().info("player name cache: " + playerNameStorageCache.getNameCache().statistics());
+            getLogger().info("player uuid cache: " + playerNameStorageCache.getUuidCache().statistics());
+        }
     }
 
     private void flushOnlineTimeCache() {
@@ -332,6 +441,28 @@ public class OnlineTimeBukkitPlugin extends JavaPlugin implements PluginProxy {
         }
     }
 
+    private void createStorageExecutor() {
+        storageExecutor = new StorageExecutor(storageMethod, storageThreads, storageQueueSize, storageVirtualThreads);
+        if (storageVirtualThreads && !storageExecutor.isVirtual()) {
+            getLogger().warning("Virtual threads require Java 21 or later, using " + storageThreads + " storage threads instead.");
+        }
+        scheduler = new StorageScheduler(scheduler, storageExecutor);
+    }
+
+    private void shutdownStorageExecutor() {
+        if (storageExecutor == null) {
+            return;
+        }
+        getLogger().info("storage executor: " + storageExecutor.statistics());
+        try {
+            if (!storageExecutor.shutdown(STORAGE_SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+                getLogger().warning("Storage calls did not finish in time, closing storage anyway.");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     private void registerPlaceholderApi() {
         if (getServer().getPluginManager().getPlugin("PlaceholderAPI") != null) {
             new OnlineTimePlaceholderExpansion(this, onlineTimeStorage).register();
@@ -341,6 +472,8 @@ public class OnlineTimeBukkitPlugin extends JavaPlugin implements PluginProxy {
 
     @Override
     public void onDisable() {
+        logCacheStatistics();
+        shutdownStorageExecutor();
         if (onlineTimeAccumulator != null) {
             try {
                 flushCacheTask.cancel();
@@ -382,6 +515,23 @@ public class OnlineTimeBukkitPlugin extends JavaPlugin implements PluginProxy {
         }
     }
 
+    @Override
+    public List<String> findPlayerNames(String prefix, int limit) {
+        String lowerPrefix = prefix.toLowerCase(Locale.ROOT);
+        SortedSet<String> names = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        for (Player player : getServer().getOnlinePlayers()) {
+            if (player.getName().toLowerCase(Locale.ROOT).startsWith(lowerPrefix)) {
+                names.add(player.getName());
+            }
+        }
+        try {
+            names.addAll(playerNameStorage.findNames(prefix, limit));
+        } catch (StorageException ex) {
+            getLogger().log(Level.WARNING, "could not find player names starting with " + prefix, ex);
+        }
+        return names.stream().limit(limit).collect(Collectors.toList());
+    }
+
     private Optional<String> getOptionalPlayerName(UUID uuid) {
         Player player = getServer().getPlayer(uuid);
         if (player != null) {
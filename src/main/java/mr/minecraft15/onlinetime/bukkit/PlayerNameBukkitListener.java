@@ -25,8 +25,7 @@
 package mr.minecraft15.onlinetime.bukkit;
 
 import mr.minecraft15.onlinetime.api.PluginProxy;
-import mr.minecraft15.onlinetime.common.PlayerNameStorage;
-import mr.minecraft15.onlinetime.api.StorageException;
+import mr.minecraft15.onlinetime.common.AsyncStorage;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
@@ -39,11 +38,11 @@ import java.util.logging.Level;
 public class PlayerNameBukkitListener implements Listener {
 
     private final PluginProxy plugin;
-    private final PlayerNameStorage nameStorage;
+    private final AsyncStorage storage;
 
-    public PlayerNameBukkitListener(PluginProxy plugin, PlayerNameStorage nameStorage) {
+    public PlayerNameBukkitListener(PluginProxy plugin, AsyncStorage storage) {
         this.plugin = plugin;
-        this.nameStorage = nameStorage;
+        this.storage = storage;
     }
 
     @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
@@ -51,12 +50,9 @@ public class PlayerNameBukkitListener implements Listener {
         Player player = event.getPlayer();
         final UUID uuid = player.getUniqueId();
         final String name = player.getName();
-        plugin.getScheduler().runAsyncOnce(() -> {
-            try {
-                nameStorage.setEntry(uuid, name);
-            } catch (StorageException ex) {
-                plugin.getLogger().log(Level.WARNING, "could not save player name and uuid " + name, ex);
-            }
+        storage.setEntry(uuid, name).exceptionally(ex -> {
+            plugin.getLogger().log(Level.WARNING, "could not save player name and uuid " + name, AsyncStorage.unwrap(ex));
+            return null;
         });
     }
 }
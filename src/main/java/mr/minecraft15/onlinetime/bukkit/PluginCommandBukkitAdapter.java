@@ -26,13 +26,14 @@ package mr.minecraft15.onlinetime.bukkit;
 
 import mr.minecraft15.onlinetime.api.PluginCommand;
 import org.bukkit.command.Command;
-import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
+import org.bukkit.command.TabExecutor;
 import org.bukkit.plugin.Plugin;
 
+import java.util.List;
 import java.util.Objects;
 
-public class PluginCommandBukkitAdapter implements CommandExecutor {
+public class PluginCommandBukkitAdapter implements TabExecutor {
 
     private final PluginCommand command;
     private final Plugin plugin;
@@ -47,4 +48,9 @@ public class PluginCommandBukkitAdapter implements CommandExecutor {
         this.command.execute(new BukkitCommandSenderAdapter(plugin, sender), args);
         return true;
     }
+
+    @Override
+    public List<String> onTabComplete(CommandSender sender, Command cmd, String label, String[] args) {
+        return this.command.tabComplete(new BukkitCommandSenderAdapter(plugin, sender), args);
+    }
 }
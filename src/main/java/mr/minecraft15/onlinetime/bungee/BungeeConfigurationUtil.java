@@ -28,21 +28,26 @@ import net.md_5.bungee.config.Configuration;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.BiConsumer;
 
 public final class BungeeConfigurationUtil {
 
     public static Map<String, ?> readAllRecursive(Configuration storage, String basePath) {
-        String subPathPrefix = basePath == null || basePath.isEmpty() ? "" : basePath + ".";
         Map<String, Object> data = new HashMap<>();
+        forEachRecursive(storage, basePath, data::put);
+        return data;
+    }
+
+    public static void forEachRecursive(Configuration storage, String basePath, BiConsumer<String, Object> consumer) {
+        String subPathPrefix = basePath == null || basePath.isEmpty() ? "" : basePath + ".";
         for (String key : storage.getKeys()) {
             Object part = storage.get(key, null);
             if (part instanceof Configuration) {
-                data.putAll(readAllRecursive((Configuration) part,subPathPrefix + key));
+                forEachRecursive((Configuration) part, subPathPrefix + key, consumer);
             } else  {
-                data.put(subPathPrefix + key, part);
+                consumer.accept(subPathPrefix + key, part);
             }
         }
-        return data;
     }
 
     private BungeeConfigurationUtil() {}
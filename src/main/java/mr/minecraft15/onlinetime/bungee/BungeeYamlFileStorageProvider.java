@@ -25,7 +25,10 @@
 package mr.minecraft15.onlinetime.bungee;
 
 import mr.minecraft15.onlinetime.api.FileStorageProvider;
+import mr.minecraft15.onlinetime.api.PluginScheduler;
 import mr.minecraft15.onlinetime.api.StorageException;
+import mr.minecraft15.onlinetime.common.DeferredFileSaver;
+import mr.minecraft15.onlinetime.common.FileStorageJournal;
 import net.md_5.bungee.api.plugin.Plugin;
 import net.md_5.bungee.config.Configuration;
 import net.md_5.bungee.config.ConfigurationProvider;
@@ -34,41 +37,73 @@ import net.md_5.bungee.config.YamlConfiguration;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringWriter;
 import java.nio.file.Files;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
 
 public class BungeeYamlFileStorageProvider implements FileStorageProvider {
 
     private final File yamlFile;
     private final Configuration storage;
 
+    private final FileStorageJournal journal;
+    private final DeferredFileSaver saver;
+
     private final ReadWriteLock rwLock;
     private final AtomicBoolean closed;
 
-    public BungeeYamlFileStorageProvider(Plugin plugin, String storageFilePath) throws StorageException {
-        this.yamlFile = createFileIfNotExists(plugin, storageFilePath);
+    /**
+     * Create a storage backed by a yaml file in the plugins data folder.
+     *
+     * @param plugin the plugin
+     * @param storageFilePath file path relative to the data folder
+     * @param scheduler scheduler to save the file asynchronously
+     * @param saveDelay seconds to collect changes before the file is saved, zero to save on every change
+     * @throws StorageException if the file could not be created or loaded
+     */
+    public BungeeYamlFileStorageProvider(Plugin plugin, String storageFilePath, PluginScheduler scheduler, long saveDelay) throws StorageException {
+        this(copyResourceIfNotExists(plugin, storageFilePath), scheduler, saveDelay, plugin.getLogger());
+    }
+
+    /**
+     * Create a storage backed by a yaml file, e.g. when running without a proxy.
+     *
+     * @param yamlFile the storage file, an empty file is created if it does not exist
+     * @param scheduler scheduler to save the file asynchronously
+     * @param saveDelay seconds to collect changes before the file is saved, zero to save on every change
+     * @param logger logger for problems while saving in the background
+     * @throws StorageException if the file could not be created or loaded
+     */
+    public BungeeYamlFileStorageProvider(File yamlFile, PluginScheduler scheduler, long saveDelay, Logger logger) throws StorageException {
+        this.yamlFile = Objects.requireNonNull(yamlFile);
 
         this.rwLock = new ReentrantReadWriteLock();
         this.closed = new AtomicBoolean(false);
 
         try {
+            if (!yamlFile.exists()) {
+                yamlFile.createNewFile();
+            }
             this.storage = ConfigurationProvider.getProvider(YamlConfiguration.class).load(yamlFile);
         } catch (IOException ex) {
             throw new StorageException("could not load storage file", ex);
         }
+        this.journal = new FileStorageJournal(new File(yamlFile.getPath() + ".journal"));
+        this.saver = new DeferredFileSaver(yamlFile, this::saveToString, journal, scheduler, saveDelay, logger);
+        restoreUnsavedChanges(logger);
     }
 
-    private File createFileIfNotExists(Plugin plugin, String storageFilePath) throws StorageException {
+    private static File copyResourceIfNotExists(Plugin plugin, String storageFilePath) throws StorageException {
         File storageFile = new File(plugin.getDataFolder(), storageFilePath);
         if (!storageFile.exists()) {
             try (InputStream input = plugin.getResourceAsStream(storageFilePath)) {
                 if (input != null) {
                     Files.copy(input, storageFile.toPath());
-                } else {
-                    storageFile.createNewFile();
                 }
             } catch (IOException ex) {
                 throw new StorageException("could not create stoage file", ex);
@@ -77,6 +112,17 @@ public class BungeeYamlFileStorageProvider implements FileStorageProvider {
         return storageFile;
     }
 
+    private void restoreUnsavedChanges(Logger logger) throws StorageException {
+        Map<String, Object> changes = journal.replay();
+        if (!changes.isEmpty()) {
+            for (Map.Entry<String, Object> change : changes.entrySet()) {
+                storage.set(change.getKey(), change.getValue());
+            }
+            saver.save();
+            logger.info("restored " + changes.size() + " unsaved changes of " + yamlFile.getName());
+        }
+    }
+
     @Override
     public Object read(String path) throws StorageException {
         Objects.requireNonNull(path);
@@ -117,13 +163,13 @@ public class BungeeYamlFileStorageProvider implements FileStorageProvider {
         rwLock.writeLock().lock();
         try {
             checkClosed();
+            journal.append(path, data);
             storage.set(path, data);
-            ConfigurationProvider.getProvider(YamlConfiguration.class).save(storage, yamlFile);
-        } catch (IOException ex) {
-            throw new StorageException(ex);
         } finally {
             rwLock.writeLock().unlock();
         }
+        journal.force();
+        saver.markDirty();
     }
 
     @Override
@@ -143,6 +189,19 @@ public class BungeeYamlFileStorageProvider implements FileStorageProvider {
         }
     }
 
+    @Override
+    public void forEach(BiConsumer<String, Object> consumer) throws StorageException {
+        Objects.requireNonNull(consumer);
+        checkClosed();
+        rwLock.readLock().lock();
+        try {
+            checkClosed();
+            BungeeConfigurationUtil.forEachRecursive(storage, "", consumer);
+        } finally {
+            rwLock.readLock().unlock();
+        }
+    }
+
     @Override
     public void writeAll(Map<String, ?> data) throws StorageException {
         Objects.requireNonNull(data);
@@ -150,15 +209,27 @@ public class BungeeYamlFileStorageProvider implements FileStorageProvider {
         rwLock.writeLock().lock();
         try {
             checkClosed();
+            journal.append(data);
             for (Map.Entry<String, ?> entry : data.entrySet()) {
                 storage.set(entry.getKey(), entry.getValue());
             }
-            ConfigurationProvider.getProvider(YamlConfiguration.class).save(storage, yamlFile);
-        } catch (IOException ex) {
-            throw new StorageException(ex);
         } finally {
             rwLock.writeLock().unlock();
         }
+        journal.force();
+        saver.markDirty();
+    }
+
+    private String saveToString() throws StorageException {
+        rwLock.readLock().lock();
+        try {
+            journal.checkpoint();
+            StringWriter writer = new StringWriter();
+            ConfigurationProvider.getProvider(YamlConfiguration.class).save(storage, writer);
+            return writer.toString();
+        } finally {
+            rwLock.readLock().unlock();
+        }
     }
 
     private void checkClosed() throws StorageException {
@@ -174,11 +245,14 @@ public class BungeeYamlFileStorageProvider implements FileStorageProvider {
         }
         rwLock.writeLock().lock();
         try {
-            if (closed.compareAndSet(false, true)) {
-                // nothing to do on close
-            }
+            closed.set(true);
         } finally {
             rwLock.writeLock().unlock();
         }
+        try {
+            saver.close();
+        } finally {
+            journal.close();
+        }
     }
 }
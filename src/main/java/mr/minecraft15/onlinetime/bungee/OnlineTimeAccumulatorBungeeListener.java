@@ -25,6 +25,7 @@
 package mr.minecraft15.onlinetime.bungee;
 
 import mr.minecraft15.onlinetime.api.PlayerData;
+import mr.minecraft15.onlinetime.api.MonotonicClock;
 import mr.minecraft15.onlinetime.api.PluginProxy;
 import mr.minecraft15.onlinetime.common.OnlineTimeAccumulator;
 import mr.minecraft15.onlinetime.api.StorageException;
@@ -46,16 +47,18 @@ public class OnlineTimeAccumulatorBungeeListener implements Listener {
 
     private final PluginProxy plugin;
     private final OnlineTimeAccumulator timeAccumulator;
+    private final MonotonicClock clock;
 
-    public OnlineTimeAccumulatorBungeeListener(PluginProxy plugin, OnlineTimeAccumulator timeAccumulator) {
+    public OnlineTimeAccumulatorBungeeListener(PluginProxy plugin, OnlineTimeAccumulator timeAccumulator, MonotonicClock clock) {
         this.plugin = plugin;
         this.timeAccumulator = timeAccumulator;
+        this.clock = clock;
     }
 
     @EventHandler
     public void onPlayerPostLogin(PostLoginEvent event) {
         final UUID uuid = event.getPlayer().getUniqueId();
-        final long now = System.currentTimeMillis();
+        final long now = clock.millis();
         plugin.getScheduler().runAsyncOnce(() -> {
             try {
                 timeAccumulator.startAccumulating(uuid, now);
@@ -68,7 +71,7 @@ public class OnlineTimeAccumulatorBungeeListener implements Listener {
     @EventHandler
     public void onPlayerDisconnect(PlayerDisconnectEvent event) {
         final UUID uuid = event.getPlayer().getUniqueId();
-        final long now = System.currentTimeMillis();
+        final long now = clock.millis();
         plugin.getScheduler().runAsyncOnce(() -> {
             try {
                 timeAccumulator.stopAccumulatingAndSaveOnlineTime(uuid, now);
@@ -99,11 +102,11 @@ public class OnlineTimeAccumulatorBungeeListener implements Listener {
                      DataInputStream in = new DataInputStream(byteInput)) {
                     switch (in.readUTF()) {
                         case "start":
-                            long startTime = in.readLong();
+                            long startTime = clock.fromWallMillis(in.readLong());
                             timeAccumulator.startAccumulating(player.getUuid(), startTime);
                             break;
                         case "stop":
-                            long stopTime = in.readLong();
+                            long stopTime = clock.fromWallMillis(in.readLong());
                             timeAccumulator.stopAccumulatingAndSaveOnlineTime(player.getUuid(), stopTime);
                             break;
                         default:
@@ -25,16 +25,18 @@
 package mr.minecraft15.onlinetime.bungee;
 
 import de.themoep.minedown.MineDown;
+import mr.minecraft15.onlinetime.api.FileStorageProvider;
+import mr.minecraft15.onlinetime.api.MonotonicClock;
 import mr.minecraft15.onlinetime.api.PlayerData;
 import mr.minecraft15.onlinetime.api.PluginProxy;
 import mr.minecraft15.onlinetime.api.PluginScheduler;
+import mr.minecraft15.onlinetime.api.PluginTask;
 import mr.minecraft15.onlinetime.api.StorageException;
 import mr.minecraft15.onlinetime.common.*;
 import net.md_5.bungee.api.chat.BaseComponent;
 import net.md_5.bungee.api.connection.ProxiedPlayer;
 import net.md_5.bungee.api.plugin.Plugin;
 import net.md_5.bungee.api.plugin.PluginManager;
-import net.md_5.bungee.api.scheduler.ScheduledTask;
 import net.md_5.bungee.config.Configuration;
 import net.md_5.bungee.config.ConfigurationProvider;
 import net.md_5.bungee.config.YamlConfiguration;
@@ -51,6 +53,7 @@ import java.util.stream.Collectors;
 public class OnlineTimeBungeePlugin extends Plugin implements PluginProxy {
 
     private static final int CONFIG_VERSION = 2;
+    private static final long STORAGE_SHUTDOWN_TIMEOUT = 10;
 
     private boolean loadSuccessful = false;
     private String mode;
@@ -58,6 +61,7 @@ public class OnlineTimeBungeePlugin extends Plugin implements PluginProxy {
     private Configuration config;
 
     private PluginScheduler scheduler;
+    private MonotonicClock clock;
 
     private MineDown messageFormat;
     private String defaultLanguage;
@@ -67,19 +71,39 @@ public class OnlineTimeBungeePlugin extends Plugin implements PluginProxy {
     private BaseComponent[] serverName;
 
     private long saveInterval;
+    private long fileSaveDelay;
+    private int fileShards;
+    private boolean fileLazyLoad;
+    private long cacheSize;
+    private long cacheExpireAfterWrite;
+    private long cacheExpireAfterAccess;
+    private int storageThreads;
+    private int storageQueueSize;
+    private boolean storageVirtualThreads;
 
     private AccumulatingOnlineTimeStorage onlineTimeStorage;
     private PlayerNameStorage playerNameStorage;
+    private BulkOnlineTimeStorage bulkOnlineTimeStorage;
+    private OnlineTimeStorageCache onlineTimeStorageCache;
+    private PlayerNameStorageCache playerNameStorageCache;
 
-    private ScheduledTask flushCacheTask;
+    private StorageExecutor storageExecutor;
+    private AsyncStorage asyncStorage;
+
+    private PluginTask flushCacheTask;
 
     @Override
     public void onLoad() {
         this.scheduler = new BungeeSchedulerAdapter(this, getProxy().getScheduler());
+        this.clock = new SystemMonotonicClock();
 
         boolean success = false;
         try {
-            success = loadConfig() && loadStorage();
+            success = loadConfig();
+            if (success) {
+                createStorageExecutor();
+                success = loadStorage();
+            }
         } finally {
             loadSuccessful = success;
         }
@@ -92,11 +116,13 @@ public class OnlineTimeBungeePlugin extends Plugin implements PluginProxy {
             return;
         }
 
+        asyncStorage = new AsyncStorage(onlineTimeStorage, playerNameStorage, storageExecutor, scheduler::runAsyncOnce);
+
         PluginManager pluginManager = getProxy().getPluginManager();
         switch (mode) {
             case "master":
                 getProxy().registerChannel("onlinetime:storage");
-                pluginManager.registerListener(this, new OnlineTimeStorageRequestListener(this, onlineTimeStorage));
+                pluginManager.registerListener(this, new OnlineTimeStorageRequestListener(this, asyncStorage));
                 getLogger().info("Enabled OnlineTimeStorageRequestListener.");
                 break;
             case "standalone":
@@ -107,20 +133,25 @@ public class OnlineTimeBungeePlugin extends Plugin implements PluginProxy {
         }
 
         pluginManager.registerCommand(this, new PluginCommandBungeeAdapter(
-                new OnlineTimeCommand(this, localization, onlineTimeStorage),
+                new OnlineTimeCommand(this, localization, asyncStorage),
                 "onlinetime", "onlinet", "otime", "ot"));
         pluginManager.registerCommand(this, new PluginCommandBungeeAdapter(
-                new OnlineTimeAdminCommand(this, localization, parser, onlineTimeStorage),
+                new OnlineTimeAdminCommand(this, localization, parser, onlineTimeStorage, this::openMigrationBackend),
                 "onlinetimeadmin", "ota", "otadmin", "onlinetimea"));
-        pluginManager.registerListener(this, new PlayerNameBungeeListener(this, playerNameStorage));
-        pluginManager.registerListener(this, new OnlineTimeAccumulatorBungeeListener(this, onlineTimeStorage));
-        flushCacheTask = getProxy().getScheduler().schedule(this, this::flushOnlineTimeCache, saveInterval / 2L, saveInterval, TimeUnit.SECONDS);
+        pluginManager.registerListener(this, new PlayerNameBungeeListener(this, asyncStorage));
+        pluginManager.registerListener(this, new OnlineTimeAccumulatorBungeeListener(this, onlineTimeStorage, clock));
+        flushCacheTask = scheduler.scheduleAsync(saveInterval / 2L, saveInterval, this::flushOnlineTimeCache);
+        if (onlineTimeStorageCache != null) {
+            onlineTimeStorageCache.startFlushing(this, saveInterval);
+        }
     }
 
     @Override
     public void onDisable() {
         getProxy().getPluginManager().unregisterCommands(this);
         getProxy().getPluginManager().unregisterListeners(this);
+        logCacheStatistics();
+        shutdownStorageExecutor();
         if (onlineTimeStorage != null) {
             try {
                 flushCacheTask.cancel();
@@ -139,6 +170,28 @@ public class OnlineTimeBungeePlugin extends Plugin implements PluginProxy {
         }
     }
 
+    private void createStorageExecutor() {
+        storageExecutor = new StorageExecutor(config.getString("storage", "yaml"), storageThreads, storageQueueSize, storageVirtualThreads);
+        if (storageVirtualThreads && !storageExecutor.isVirtual()) {
+            getLogger().warning("Virtual threads require Java 21 or later, using " + storageThreads + " storage threads instead.");
+        }
+        scheduler = new StorageScheduler(scheduler, storageExecutor);
+    }
+
+    private void shutdownStorageExecutor() {
+        if (storageExecutor == null) {
+            return;
+        }
+        getLogger().info("storage executor: " + storageExecutor.statistics());
+        try {
+            if (!storageExecutor.shutdown(STORAGE_SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+                getLogger().warning("Storage calls did not finish in time, closing storage anyway.");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     @Override
     public MineDown getFormattedMessage(MineDown rawMessage) {
         return messageFormat.copy()
@@ -190,6 +243,15 @@ public class OnlineTimeBungeePlugin extends Plugin implements PluginProxy {
         this.messageFormat = new MineDown(config.getString("messageformat"));
         this.serverName = new MineDown(config.getString("servername", "this server")).toComponent();
         this.saveInterval = config.getLong("saveinterval", 30);
+        this.fileSaveDelay = config.getLong("filesavedelay", 5);
+        this.fileShards = config.getInt("fileshards", 1);
+        this.fileLazyLoad = config.getBoolean("filelazyload", false);
+        this.cacheSize = config.getLong("cachesize", 10000);
+        this.cacheExpireAfterWrite = config.getLong("cacheexpireafterwrite", 3600);
+        this.cacheExpireAfterAccess = config.getLong("cacheexpireafteraccess", 900);
+        this.storageThreads = Math.max(1, config.getInt("storagethreads", 4));
+        this.storageQueueSize = Math.max(1, config.getInt("storagequeuesize", 1000));
+        this.storageVirtualThreads = config.getBoolean("storagevirtualthreads", false);
         this.mode = config.getString("mode");
 
         Configuration langConfig = loadOrCreateYamlConfig("messages.yml");
@@ -277,11 +339,24 @@ public class OnlineTimeBungeePlugin extends Plugin implements PluginProxy {
     }
 
     private Localization loadLocalization(Configuration langConfig, String language) {
-        Map<String, String> translations = BungeeConfigurationUtil
+        Map<String, String> translations = new HashMap<>();
+        // messages added by updates are missing in existing files, so start with the bundled ones
+        try (InputStream input = getResourceAsStream("messages.yml")) {
+            if (input != null) {
+                translations.putAll(readTranslations(ConfigurationProvider.getProvider(YamlConfiguration.class).load(input), language));
+            }
+        } catch (IOException ex) {
+            getLogger().log(Level.WARNING, "Could not read default messages.", ex);
+        }
+        translations.putAll(readTranslations(langConfig, language));
+        return new Localization(translations);
+    }
+
+    private Map<String, String> readTranslations(Configuration langConfig, String language) {
+        return BungeeConfigurationUtil
                 .readAllRecursive(langConfig.getSection(language), "").entrySet().stream()
             .filter(entry -> entry.getValue() instanceof String)
             .collect(Collectors.toMap(Map.Entry::getKey, entry -> (String) entry.getValue()));
-        return new Localization(translations);
     }
 
     private String[] getUnits(Configuration langConfig, String language, String unit) {
@@ -338,6 +413,13 @@ public class OnlineTimeBungeePlugin extends Plugin implements PluginProxy {
                 case "file":
                     loadYamlStorage();
                     return true;
+                case "binlog":
+                    loadBinaryLogStorage();
+                    return true;
+                case "mmap":
+                case "mapped":
+                    loadMappedStorage();
+                    return true;
                 case "sql":
                 case "mysql":
                 case "mariadb":
@@ -355,7 +437,38 @@ public class OnlineTimeBungeePlugin extends Plugin implements PluginProxy {
         }
     }
 
+    private void loadMappedStorage() throws StorageException {
+        this.playerNameStorage = new FilePlayerNameStorage(createFileStorage("names"));
+        this.bulkOnlineTimeStorage = new MappedOnlineTimeStorage(getDataFolder());
+        this.onlineTimeStorage = new AccumulatingOnlineTimeStorage(bulkOnlineTimeStorage, clock);
+    }
+
+    private FileStorageProvider createFileStorage(String name) throws StorageException {
+        ShardedFileStorageProvider.ProviderFactory factory = fileName -> new BungeeYamlFileStorageProvider(this, fileName, scheduler, fileSaveDelay);
+        if (fileLazyLoad) {
+            ShardedFileStorageProvider.ProviderFactory loader = factory;
+            factory = fileName -> new LazyFileStorageProvider(getDataFolder(), fileName, loader);
+        }
+        return ShardedFileStorageProvider.open(getDataFolder(), name, "yml", fileShards, factory);
+    }
+
+    private void loadBinaryLogStorage() throws StorageException {
+        BinaryLogStorage storage = new BinaryLogStorage(getDataFolder());
+        this.playerNameStorage = storage;
+        this.bulkOnlineTimeStorage = storage;
+        this.onlineTimeStorage = new AccumulatingOnlineTimeStorage(storage, clock);
+    }
+
     private void loadMysqlStorage() throws StorageException {
+        DatabaseStorage storage = new DatabaseStorage(loadDatabaseProperties());
+        this.bulkOnlineTimeStorage = storage;
+        this.playerNameStorageCache = new PlayerNameStorageCache(storage, createCache(), createCache());
+        this.playerNameStorage = playerNameStorageCache;
+        this.onlineTimeStorageCache = new OnlineTimeStorageCache(storage, createCache());
+        this.onlineTimeStorage = new AccumulatingOnlineTimeStorage(onlineTimeStorageCache, clock);
+    }
+
+    private Properties loadDatabaseProperties() throws StorageException {
         Properties properties = new Properties();
         File propertiesFile = getOrCreateConfigFile("database.properties");
         try (Reader fileReader = new FileReader(propertiesFile); BufferedReader reader = new BufferedReader(fileReader)) {
@@ -363,14 +476,61 @@ public class OnlineTimeBungeePlugin extends Plugin implements PluginProxy {
         } catch (IOException ex) {
             throw new StorageException(ex);
         }
-        DatabaseStorage storage = new DatabaseStorage(properties);
-        this.playerNameStorage = storage;
-        this.onlineTimeStorage = new AccumulatingOnlineTimeStorage(storage);
+        return properties;
+    }
+
+    private StorageMigration.Backend openMigrationBackend(String storage, boolean withNames) throws StorageException {
+        String activeStorage = StorageMigration.canonicalName(config.getString("storage", "yaml")).orElse(null);
+        StorageMigration.Backend active = null;
+        if (bulkOnlineTimeStorage != null) {
+            if (storage.equals(activeStorage)) {
+                // the time of running sessions must be in storage before it is read
+                onlineTimeStorage.flushOnlineTimeCache();
+            }
+            // migrated times must not be hidden by times cached before
+            BulkOnlineTimeStorage activeOnlineTimes = onlineTimeStorageCache == null ? bulkOnlineTimeStorage
+                    : onlineTimeStorageCache.bulkView(bulkOnlineTimeStorage);
+            active = new StorageMigration.Backend(activeOnlineTimes, false, playerNameStorage, false);
+        }
+        return StorageMigration.openBackend(storage, withNames, active, activeStorage, getDataFolder(),
+                this::createFileStorage, this::loadDatabaseProperties);
+    }
+
+    private <K, V> BoundedExpiringCache<K, V> createCache() {
+        return new BoundedExpiringCache<>(cacheSize, cacheExpireAfterWrite, cacheExpireAfterAccess, TimeUnit.SECONDS);
+    }
+
+    private void logCacheStatistics() {
+        if (onlineTimeStorageCache != null) {
+            getLogger().info("online time cache: " + onlineTimeStorageCache.getCache().statistics());
+        }
+        if (playerNameStorageCache != null) {
+            getLogger().info("player name cache: " + playerNameStorageCache.getNameCache().statistics());
+            getLogger().info("player uuid cache: " + playerNameStorageCache.getUuidCache().statistics());
+        }
     }
 
     private void loadYamlStorage() throws StorageException {
-        this.playerNameStorage = new FilePlayerNameStorage(new BungeeYamlFileStorageProvider(this, "names.yml"));
-        this.onlineTimeStorage = new AccumulatingOnlineTimeStorage(new FileOnlineTimeStorage(new BungeeYamlFileStorageProvider(this, "time.yml")));
+        this.playerNameStorage = new FilePlayerNameStorage(createFileStorage("names"));
+        this.bulkOnlineTimeStorage = new FileOnlineTimeStorage(createFileStorage("time"));
+        this.onlineTimeStorage = new AccumulatingOnlineTimeStorage(bulkOnlineTimeStorage, clock);
+    }
+
+    @Override
+    public List<String> findPlayerNames(String prefix, int limit) {
+        String lowerPrefix = prefix.toLowerCase(Locale.ROOT);
+        SortedSet<String> names = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        for (ProxiedPlayer player : getProxy().getPlayers()) {
+            if (player.getName().toLowerCase(Locale.ROOT).startsWith(lowerPrefix)) {
+                names.add(player.getName());
+            }
+        }
+        try {
+            names.addAll(playerNameStorage.findNames(prefix, limit));
+        } catch (StorageException ex) {
+            getLogger().log(Level.WARNING, "could not find player names starting with " + prefix, ex);
+        }
+        return names.stream().limit(limit).collect(Collectors.toList());
     }
 
     private Optional<String> getOptionalPlayerName(UUID uuid) {
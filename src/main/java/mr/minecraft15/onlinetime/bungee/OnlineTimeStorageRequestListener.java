@@ -26,8 +26,7 @@ package mr.minecraft15.onlinetime.bungee;
 
 import mr.minecraft15.onlinetime.api.PlayerData;
 import mr.minecraft15.onlinetime.api.PluginProxy;
-import mr.minecraft15.onlinetime.api.OnlineTimeStorage;
-import mr.minecraft15.onlinetime.api.StorageException;
+import mr.minecraft15.onlinetime.common.AsyncStorage;
 import net.md_5.bungee.api.connection.Connection;
 import net.md_5.bungee.api.connection.ProxiedPlayer;
 import net.md_5.bungee.api.connection.Server;
@@ -42,11 +41,11 @@ import java.util.logging.Level;
 public class OnlineTimeStorageRequestListener implements Listener {
 
     private final PluginProxy plugin;
-    private final OnlineTimeStorage timeStorage;
+    private final AsyncStorage storage;
 
-    public OnlineTimeStorageRequestListener(PluginProxy plugin, OnlineTimeStorage timeStorage) {
+    public OnlineTimeStorageRequestListener(PluginProxy plugin, AsyncStorage storage) {
         this.plugin = Objects.requireNonNull(plugin);
-        this.timeStorage = Objects.requireNonNull(timeStorage);
+        this.storage = Objects.requireNonNull(storage);
     }
 
     @EventHandler
@@ -71,31 +70,34 @@ public class OnlineTimeStorageRequestListener implements Listener {
 
             final byte[] data = event.getData();
             final PlayerData player = new PlayerData(target.getUniqueId(), target.getName());
-            plugin.getScheduler().runAsyncOnce(() -> {
-                try (ByteArrayInputStream byteInput = new ByteArrayInputStream(data);
-                     DataInputStream in = new DataInputStream(byteInput)) {
-                    switch (in.readUTF()) {
-                        case "get":
-                            long onlineTime = timeStorage.getOnlineTime(player.getUuid()).orElse(0);
-                            sendPluginMessage(source, "onlinetime:storage", player.getUuid().toString(), onlineTime);
-                            break;
-                        case "modify":
-                            long modifyTime = in.readLong();
-                            timeStorage.addOnlineTime(player.getUuid(), modifyTime);
-                            break;
-                        default:
-                            throw new IOException("invalid data");
-                    }
-                } catch (StorageException ex) {
-                    plugin.getLogger().log(Level.WARNING, "error while handling plugin message", ex);
-                } catch (IOException ex) {
-                    plugin.getLogger().log(Level.WARNING, "invalid plugin message", ex);
+            try (ByteArrayInputStream byteInput = new ByteArrayInputStream(data);
+                 DataInputStream in = new DataInputStream(byteInput)) {
+                switch (in.readUTF()) {
+                    case "get":
+                        storage.getOnlineTime(player.getUuid())
+                                .thenAccept(onlineTime -> sendPluginMessage(source, "onlinetime:storage", player.getUuid().toString(), onlineTime.orElse(0)))
+                                .exceptionally(this::logStorageError);
+                        break;
+                    case "modify":
+                        long modifyTime = in.readLong();
+                        storage.addOnlineTime(player.getUuid(), modifyTime)
+                                .exceptionally(this::logStorageError);
+                        break;
+                    default:
+                        throw new IOException("invalid data");
                 }
-            });
+            } catch (IOException ex) {
+                plugin.getLogger().log(Level.WARNING, "invalid plugin message", ex);
+            }
         }
     }
 
 
+    private Void logStorageError(Throwable ex) {
+        plugin.getLogger().log(Level.WARNING, "error while handling plugin message", AsyncStorage.unwrap(ex));
+        return null;
+    }
+
     public void sendPluginMessage(Server target, String channel, Object... message) {
         try (ByteArrayOutputStream byteOut = new ByteArrayOutputStream();
              DataOutputStream out = new DataOutputStream(byteOut)) {
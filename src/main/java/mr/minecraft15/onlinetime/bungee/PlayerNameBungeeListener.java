@@ -25,8 +25,7 @@
 package mr.minecraft15.onlinetime.bungee;
 
 import mr.minecraft15.onlinetime.api.PluginProxy;
-import mr.minecraft15.onlinetime.common.PlayerNameStorage;
-import mr.minecraft15.onlinetime.api.StorageException;
+import mr.minecraft15.onlinetime.common.AsyncStorage;
 import net.md_5.bungee.api.connection.ProxiedPlayer;
 import net.md_5.bungee.api.event.PostLoginEvent;
 import net.md_5.bungee.api.plugin.Listener;
@@ -38,11 +37,11 @@ import java.util.logging.Level;
 public class PlayerNameBungeeListener implements Listener {
 
     private final PluginProxy plugin;
-    private final PlayerNameStorage nameStorage;
+    private final AsyncStorage storage;
 
-    public PlayerNameBungeeListener(PluginProxy plugin, PlayerNameStorage nameStorage) {
+    public PlayerNameBungeeListener(PluginProxy plugin, AsyncStorage storage) {
         this.plugin = plugin;
-        this.nameStorage = nameStorage;
+        this.storage = storage;
     }
 
     @EventHandler
@@ -50,12 +49,9 @@ public class PlayerNameBungeeListener implements Listener {
         ProxiedPlayer player = event.getPlayer();
         final UUID uuid = player.getUniqueId();
         final String name = player.getName();
-        plugin.getScheduler().runAsyncOnce(() -> {
-            try {
-                nameStorage.setEntry(uuid, name);
-            } catch (StorageException ex) {
-                plugin.getLogger().log(Level.WARNING, "could not save player name and uuid " + name, ex);
-            }
+        storage.setEntry(uuid, name).exceptionally(ex -> {
+            plugin.getLogger().log(Level.WARNING, "could not save player name and uuid " + name, AsyncStorage.unwrap(ex));
+            return null;
         });
     }
 }
@@ -27,8 +27,9 @@ package mr.minecraft15.onlinetime.bungee;
 import mr.minecraft15.onlinetime.api.PluginCommand;
 import net.md_5.bungee.api.CommandSender;
 import net.md_5.bungee.api.plugin.Command;
+import net.md_5.bungee.api.plugin.TabExecutor;
 
-public class PluginCommandBungeeAdapter extends Command {
+public class PluginCommandBungeeAdapter extends Command implements TabExecutor {
 
     private final PluginCommand command;
 
@@ -41,4 +42,9 @@ public class PluginCommandBungeeAdapter extends Command {
     public void execute(CommandSender sender, String[] args) {
         command.execute(new BungeeCommandSenderAdapter(sender), args);
     }
+
+    @Override
+    public Iterable<String> onTabComplete(CommandSender sender, String[] args) {
+        return command.tabComplete(new BungeeCommandSenderAdapter(sender), args);
+    }
 }
@@ -24,26 +24,38 @@
 
 package mr.minecraft15.onlinetime.common;
 
+import mr.minecraft15.onlinetime.api.MonotonicClock;
 import mr.minecraft15.onlinetime.api.OnlineTimeStorage;
 import mr.minecraft15.onlinetime.api.StorageException;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 
 public class AccumulatingOnlineTimeStorage implements OnlineTimeStorage, OnlineTimeAccumulator {
 
     private final OnlineTimeStorage storage;
-    private final ConcurrentMap<UUID, Long> onlineSince = new ConcurrentHashMap<>();
+    private final MonotonicClock clock;
+    private final SessionTable onlineSince = new SessionTable();
 
     public AccumulatingOnlineTimeStorage(OnlineTimeStorage onlineTimeStorage) {
+        this(onlineTimeStorage, new SystemMonotonicClock());
+    }
+
+    /**
+     * Create an accumulator. All times passed to it must be taken from the same clock.
+     *
+     * @param onlineTimeStorage storage to write accumulated time to
+     * @param clock clock used for flushes and queries
+     */
+    public AccumulatingOnlineTimeStorage(OnlineTimeStorage onlineTimeStorage, MonotonicClock clock) {
         this.storage = Objects.requireNonNull(onlineTimeStorage);
+        this.clock = Objects.requireNonNull(clock);
     }
 
     @Override
     public OptionalLong getOnlineTime(UUID uuid) throws StorageException {
-        if (onlineSince.containsKey(uuid)) {
-            long accumulatedTime = (System.currentTimeMillis() - onlineSince.get(uuid)) / 1000;
+        long from = onlineSince.get(uuid);
+        if (from != SessionTable.ABSENT) {
+            long accumulatedTime = (clock.millis() - from) / 1000;
             long storedTime = storage.getOnlineTime(uuid).orElse(0);
             return OptionalLong.of(accumulatedTime + storedTime);
         } else {
@@ -53,8 +65,7 @@ public class AccumulatingOnlineTimeStorage implements OnlineTimeStorage, OnlineT
 
     @Override
     public void addOnlineTime(UUID uuid, long additionalOnlineTime) throws StorageException {
-        Long present = onlineSince.computeIfPresent(uuid, (key, value) -> value - additionalOnlineTime * 1000);
-        if (null == present) {
+        if (!onlineSince.addIfPresent(uuid, -additionalOnlineTime * 1000)) {
             // no entry for uuid present, directly writing to storage
             this.storage.addOnlineTime(uuid, additionalOnlineTime);
         }
@@ -64,8 +75,7 @@ public class AccumulatingOnlineTimeStorage implements OnlineTimeStorage, OnlineT
     public void addOnlineTimes(Map<UUID, Long> additionalOnlineTimes) throws StorageException {
         Map<UUID, Long> directWrite = new HashMap<>();
         for (Map.Entry<UUID, Long> entry : additionalOnlineTimes.entrySet()) {
-            Long present = onlineSince.computeIfPresent(entry.getKey(), (key, value) -> value - entry.getValue() * 1000);
-            if (null == present) {
+            if (!onlineSince.addIfPresent(entry.getKey(), -entry.getValue() * 1000)) {
                 // no entry for uuid present, directly writing to storage
                 directWrite.put(entry.getKey(), entry.getValue());
             }
@@ -75,8 +85,8 @@ public class AccumulatingOnlineTimeStorage implements OnlineTimeStorage, OnlineT
 
     @Override
     public void startAccumulating(UUID uuid, long when) throws StorageException {
-        Long from = onlineSince.put(uuid, when);
-        if (null != from) {
+        long from = onlineSince.put(uuid, when);
+        if (from != SessionTable.ABSENT) {
             long previousOnlineTime = (when - from) / 1000;
             storage.addOnlineTime(uuid, previousOnlineTime);
         }
@@ -84,13 +94,11 @@ public class AccumulatingOnlineTimeStorage implements OnlineTimeStorage, OnlineT
 
     @Override
     public void stopAccumulatingAndSaveOnlineTime(UUID uuid, long when) throws StorageException {
-        if (onlineSince.containsKey(uuid)) {
-            Long from = onlineSince.remove(uuid);
-            if (null != from) {
-                long currentOnlineTime = (when - from) / 1000;
-                storage.addOnlineTime(uuid, currentOnlineTime);
-            } // else already stopped concurrently
-        }
+        long from = onlineSince.remove(uuid);
+        if (from != SessionTable.ABSENT) {
+            long currentOnlineTime = (when - from) / 1000;
+            storage.addOnlineTime(uuid, currentOnlineTime);
+        } // else already stopped concurrently
     }
 
     @Override
@@ -99,13 +107,11 @@ public class AccumulatingOnlineTimeStorage implements OnlineTimeStorage, OnlineT
             return;
         }
         final Map<UUID, Long> onlineTime = new HashMap<>();
-        final long now = System.currentTimeMillis();
-        onlineSince.keySet().forEach(uuid -> {
-            Long from = onlineSince.replace(uuid, now);
-            if (from != null) { // protect from concurrent change
-                onlineTime.put(uuid, (now - from) / 1000);
-            }
-        });
+        final long now = clock.millis();
+        // every session start is swapped atomically, joins and quits running meanwhile are never blocked
+        onlineSince.replaceAll(
+                (msb, lsb, from) -> from + Math.max(0, (now - from) / 1000) * 1000, // keep the sub-second remainder for the next flush
+                (msb, lsb, from, to) -> onlineTime.put(new UUID(msb, lsb), (to - from) / 1000));
         storage.addOnlineTimes(onlineTime);
     }
 
@@ -114,13 +120,8 @@ public class AccumulatingOnlineTimeStorage implements OnlineTimeStorage, OnlineT
         try {
             if (!onlineSince.isEmpty()) {
                 final Map<UUID, Long> onlineTime = new HashMap<>();
-                final long now = System.currentTimeMillis();
-                new HashSet<>(onlineSince.keySet()).forEach(uuid -> {
-                    Long from = onlineSince.remove(uuid);
-                    if (from != null) { // protect from concurrent change
-                        onlineTime.put(uuid, (now - from) / 1000);
-                    }
-                });
+                final long now = clock.millis();
+                onlineSince.removeAll((msb, lsb, from) -> onlineTime.put(new UUID(msb, lsb), (now - from) / 1000));
                 storage.addOnlineTimes(onlineTime);
             }
         } finally {
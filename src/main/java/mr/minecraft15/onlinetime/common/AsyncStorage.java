@@ -0,0 +1,148 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Niklas Seyfarth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package mr.minecraft15.onlinetime.common;
+
+import mr.minecraft15.onlinetime.api.OnlineTimeStorage;
+import mr.minecraft15.onlinetime.api.StorageException;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.UUID;
+import java.util.concurrent.*;
+
+/**
+ * Non-blocking access to the storages of one backend. Every call runs on the executor of the backend and the returned
+ * future completes with its result, or exceptionally with the {@link StorageException} of the storage. Dependent stages
+ * run on the executor thread unless an async variant is used.
+ * <p>
+ * Lookups fail if the executor rejects them. Writes are handed to the write executor instead, which should delay
+ * them rather than reject them when the storage executor is saturated.
+ */
+public class AsyncStorage {
+
+    private final OnlineTimeStorage onlineTimeStorage;
+    private final PlayerNameStorage playerNameStorage;
+    private final Executor executor;
+    private final Executor writeExecutor;
+
+    public AsyncStorage(OnlineTimeStorage onlineTimeStorage, PlayerNameStorage playerNameStorage, Executor executor, Executor writeExecutor) {
+        this.onlineTimeStorage = Objects.requireNonNull(onlineTimeStorage);
+        this.playerNameStorage = Objects.requireNonNull(playerNameStorage);
+        this.executor = Objects.requireNonNull(executor);
+        this.writeExecutor = Objects.requireNonNull(writeExecutor);
+    }
+
+    /**
+     * Get the exception a storage call failed with, without the {@link CompletionException} added by dependent stages.
+     *
+     * @param throwable exception a future was completed with
+     * @return the original exception
+     */
+    public static Throwable unwrap(Throwable throwable) {
+        Throwable cause = throwable;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    /**
+     * Run any blocking storage call on the executor of this backend.
+     *
+     * @param call storage call
+     * @param <T> type of the result
+     * @return future of the result
+     */
+    public <T> CompletableFuture<T> supply(StorageCall<T> call) {
+        return supply(executor, call);
+    }
+
+    private CompletableFuture<Void> write(StorageWrite write) {
+        return supply(writeExecutor, () -> {
+            write.write();
+            return null;
+        });
+    }
+
+    private static <T> CompletableFuture<T> supply(Executor executor, StorageCall<T> call) {
+        Objects.requireNonNull(call);
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(call.call());
+                } catch (StorageException | RuntimeException ex) {
+                    future.completeExceptionally(ex);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            future.completeExceptionally(new StorageException("too many pending storage calls", ex));
+        }
+        return future;
+    }
+
+    public CompletableFuture<OptionalLong> getOnlineTime(UUID uuid) {
+        Objects.requireNonNull(uuid);
+        return supply(() -> onlineTimeStorage.getOnlineTime(uuid));
+    }
+
+    public CompletableFuture<Void> addOnlineTime(UUID uuid, long additionalOnlineTime) {
+        Objects.requireNonNull(uuid);
+        return write(() -> onlineTimeStorage.addOnlineTime(uuid, additionalOnlineTime));
+    }
+
+    public CompletableFuture<Void> addOnlineTimes(Map<UUID, Long> additionalOnlineTimes) {
+        Objects.requireNonNull(additionalOnlineTimes);
+        return write(() -> onlineTimeStorage.addOnlineTimes(additionalOnlineTimes));
+    }
+
+    public CompletableFuture<Optional<UUID>> getUuid(String playerName) {
+        Objects.requireNonNull(playerName);
+        return supply(() -> playerNameStorage.getUuid(playerName));
+    }
+
+    public CompletableFuture<Optional<String>> getName(UUID uuid) {
+        Objects.requireNonNull(uuid);
+        return supply(() -> playerNameStorage.getName(uuid));
+    }
+
+    public CompletableFuture<Void> setEntry(UUID uuid, String name) {
+        Objects.requireNonNull(uuid);
+        Objects.requireNonNull(name);
+        return write(() -> playerNameStorage.setEntry(uuid, name));
+    }
+
+    @FunctionalInterface
+    public interface StorageCall<T> {
+        T call() throws StorageException;
+    }
+
+    @FunctionalInterface
+    private interface StorageWrite {
+        void write() throws StorageException;
+    }
+}
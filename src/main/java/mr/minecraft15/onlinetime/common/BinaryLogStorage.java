@@ -0,0 +1,536 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Niklas Seyfarth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package mr.minecraft15.onlinetime.common;
+
+import mr.minecraft15.onlinetime.api.StorageException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * Storage that keeps all data in memory and appends every change to a binary log. When the log grows larger than
+ * the last snapshot it is compacted: the whole state is written to a new snapshot and the log starts over.
+ * <p>
+ * The log starts with its generation, followed by one frame per write. A frame is the payload length, the CRC32 of
+ * the payload and the records. A record is its type, the 16 byte UUID and either the varint encoded online time delta
+ * or the player's name. A frame cut off by a crash is dropped on the next start. Snapshot and log carry the same
+ * generation, so a log that is older than the snapshot is known to be part of it already. A log without a complete
+ * header holds no changes, the snapshot written before it was started already contains everything.
+ * <p>
+ * Names are unique and compared case insensitively: setting a name removes it from the player who had it before and a
+ * player has at most one name.
+ */
+public class BinaryLogStorage implements BulkOnlineTimeStorage, PlayerNameStorage {
+
+    public static final String LOG_FILE_NAME = "storage.binlog";
+    public static final String SNAPSHOT_FILE_NAME = "storage.snapshot";
+
+    private static final int LOG_MAGIC = 0x4f544c47;
+    private static final int SNAPSHOT_MAGIC = 0x4f54534e;
+    private static final byte VERSION = 1;
+    private static final int LOG_HEADER_SIZE = 4 + 1 + 8;
+    private static final int FRAME_HEADER_SIZE = 4 + 4;
+
+    private static final byte RECORD_TIME = 1;
+    private static final byte RECORD_NAME = 2;
+
+    private static final long MIN_COMPACTION_SIZE = 1024 * 1024;
+
+    private final Path logFile;
+    private final Path snapshotFile;
+
+    private final Map<UUID, Long> onlineTimes;
+    private final PlayerNameIndex names;
+
+    private final ReadWriteLock rwLock;
+    private final AtomicBoolean closed;
+
+    private FileChannel log;
+    private long generation;
+    private long snapshotSize;
+
+    public BinaryLogStorage(File directory) throws StorageException {
+        Objects.requireNonNull(directory);
+        this.logFile = new File(directory, LOG_FILE_NAME).toPath();
+        this.snapshotFile = new File(directory, SNAPSHOT_FILE_NAME).toPath();
+
+        this.onlineTimes = new HashMap<>();
+        this.names = new PlayerNameIndex();
+
+        this.rwLock = new ReentrantReadWriteLock();
+        this.closed = new AtomicBoolean(false);
+
+        try {
+            Files.createDirectories(directory.toPath());
+            readSnapshot();
+            this.log = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            replayLog();
+        } catch (IOException ex) {
+            throw new StorageException("could not open binary log storage", ex);
+        }
+    }
+
+    private void readSnapshot() throws IOException, StorageException {
+        if (!Files.exists(snapshotFile)) {
+            this.generation = 0;
+            this.snapshotSize = 0;
+            return;
+        }
+        byte[] content = Files.readAllBytes(snapshotFile);
+        if (content.length < 4 || checksum(content, 0, content.length - 4) != ByteBuffer.wrap(content, content.length - 4, 4).getInt()) {
+            throw new StorageException("damaged snapshot " + snapshotFile.getFileName());
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(content, 0, content.length - 4);
+        try {
+            if (buffer.getInt() != SNAPSHOT_MAGIC || buffer.get() != VERSION) {
+                throw new StorageException("unknown snapshot format " + snapshotFile.getFileName());
+            }
+            this.generation = buffer.getLong();
+            int timeCount = (int) readVarLong(buffer);
+            for (int i = 0; i < timeCount; i++) {
+                onlineTimes.put(readUuid(buffer), readZigZag(buffer));
+            }
+            int nameCount = (int) readVarLong(buffer);
+            for (int i = 0; i < nameCount; i++) {
+                applyName(readUuid(buffer), readString(buffer));
+            }
+        } catch (BufferUnderflowException ex) {
+            throw new StorageException("damaged snapshot " + snapshotFile.getFileName(), ex);
+        }
+        this.snapshotSize = content.length;
+    }
+
+    private void replayLog() throws IOException, StorageException {
+        long size = log.size();
+        if (size < LOG_HEADER_SIZE) {
+            // new storage, or compaction wrote the snapshot and crashed while starting the new log
+            startLog();
+            return;
+        }
+        ByteBuffer content = ByteBuffer.allocate((int) size);
+        while (content.hasRemaining() && log.read(content, content.position()) >= 0) {
+            // read the whole log
+        }
+        content.flip();
+        if (content.getInt() != LOG_MAGIC || content.get() != VERSION) {
+            throw new StorageException("unknown log format " + logFile.getFileName());
+        }
+        long logGeneration = content.getLong();
+        if (logGeneration < generation) {
+            // compaction finished writing the snapshot but not the new log
+            startLog();
+            return;
+        } else if (logGeneration > generation) {
+            throw new StorageException("missing snapshot for log generation " + logGeneration);
+        }
+        int valid = content.position();
+        while (content.remaining() >= FRAME_HEADER_SIZE) {
+            int length = content.getInt();
+            int checksum = content.getInt();
+            if (length < 0 || length > content.remaining()) {
+                break;
+            }
+            int start = content.position();
+            if (checksum != checksum(content.array(), start, length)) {
+                break;
+            }
+            ByteBuffer frame = ByteBuffer.wrap(content.array(), start, length);
+            try {
+                applyRecords(frame);
+            } catch (BufferUnderflowException ex) {
+                throw new StorageException("damaged log " + logFile.getFileName(), ex);
+            }
+            content.position(start + length);
+            valid = content.position();
+        }
+        if (valid < size) {
+            log.truncate(valid);
+            log.force(false);
+        }
+        log.position(valid);
+    }
+
+    private void startLog() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_SIZE);
+        header.putInt(LOG_MAGIC).put(VERSION).putLong(generation).flip();
+        log.truncate(0);
+        while (header.hasRemaining()) {
+            log.write(header, header.position());
+        }
+        log.force(true);
+        log.position(LOG_HEADER_SIZE);
+    }
+
+    private void applyRecords(ByteBuffer frame) throws StorageException {
+        while (frame.hasRemaining()) {
+            byte type = frame.get();
+            UUID uuid = readUuid(frame);
+            switch (type) {
+                case RECORD_TIME:
+                    onlineTimes.merge(uuid, readZigZag(frame), Long::sum);
+                    break;
+                case RECORD_NAME:
+                    applyName(uuid, readString(frame));
+                    break;
+                default:
+                    throw new StorageException("unknown record type " + type + " in " + logFile.getFileName());
+            }
+        }
+    }
+
+    private void applyName(UUID uuid, String name) {
+        names.getName(uuid).ifPresent(names::remove);
+        names.put(uuid, name);
+    }
+
+    @Override
+    public OptionalLong getOnlineTime(UUID uuid) throws StorageException {
+        Objects.requireNonNull(uuid);
+        checkClosed();
+        rwLock.readLock().lock();
+        try {
+            checkClosed();
+            Long time = onlineTimes.get(uuid);
+            return time == null ? OptionalLong.empty() : OptionalLong.of(time);
+        } finally {
+            rwLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void addOnlineTime(UUID uuid, long additionalOnlineTime) throws StorageException {
+        Objects.requireNonNull(uuid);
+        addOnlineTimes(Collections.singletonMap(uuid, additionalOnlineTime));
+    }
+
+    @Override
+    public void addOnlineTimes(Map<UUID, Long> additionalOnlineTimes) throws StorageException {
+        Objects.requireNonNull(additionalOnlineTimes);
+        if (additionalOnlineTimes.isEmpty()) {
+            return;
+        }
+        ByteArrayOutputStream records = new ByteArrayOutputStream(additionalOnlineTimes.size() * 20);
+        for (Map.Entry<UUID, Long> entry : additionalOnlineTimes.entrySet()) {
+            records.write(RECORD_TIME);
+            writeUuid(records, entry.getKey());
+            writeZigZag(records, entry.getValue());
+        }
+        append(records.toByteArray());
+    }
+
+    @Override
+    public void forEachOnlineTime(BiConsumer<UUID, Long> consumer) throws StorageException {
+        Objects.requireNonNull(consumer);
+        checkClosed();
+        Map<UUID, Long> sortedOnlineTimes = new TreeMap<>(UuidUtil.BYTE_ORDER);
+        rwLock.readLock().lock();
+        try {
+            checkClosed();
+            sortedOnlineTimes.putAll(onlineTimes);
+        } finally {
+            rwLock.readLock().unlock();
+        }
+        sortedOnlineTimes.forEach(consumer);
+    }
+
+    @Override
+    public void setOnlineTimes(Map<UUID, Long> newOnlineTimes) throws StorageException {
+        Objects.requireNonNull(newOnlineTimes);
+        if (newOnlineTimes.isEmpty()) {
+            return;
+        }
+        checkClosed();
+        // the log only stores changes, so they are computed under the same lock that appends them
+        rwLock.writeLock().lock();
+        try {
+            checkClosed();
+            ByteArrayOutputStream records = new ByteArrayOutputStream(newOnlineTimes.size() * 20);
+            for (Map.Entry<UUID, Long> entry : newOnlineTimes.entrySet()) {
+                records.write(RECORD_TIME);
+                writeUuid(records, entry.getKey());
+                writeZigZag(records, entry.getValue() - onlineTimes.getOrDefault(entry.getKey(), 0L));
+            }
+            append(records.toByteArray());
+        } finally {
+            rwLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Optional<UUID> getUuid(String playerName) throws StorageException {
+        Objects.requireNonNull(playerName);
+        checkClosed();
+        rwLock.readLock().lock();
+        try {
+            checkClosed();
+            return names.getUuid(playerName);
+        } finally {
+            rwLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Optional<String> getName(UUID uuid) throws StorageException {
+        Objects.requireNonNull(uuid);
+        checkClosed();
+        rwLock.readLock().lock();
+        try {
+            checkClosed();
+            return names.getName(uuid);
+        } finally {
+            rwLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<String> findNames(String prefix, int limit) throws StorageException {
+        Objects.requireNonNull(prefix);
+        checkClosed();
+        return names.findNames(prefix, limit);
+    }
+
+    @Override
+    public void forEachEntry(BiConsumer<UUID, String> consumer) throws StorageException {
+        Objects.requireNonNull(consumer);
+        checkClosed();
+        Map<UUID, String> sortedNames = new TreeMap<>(UuidUtil.BYTE_ORDER);
+        sortedNames.putAll(names.getLatestNames());
+        sortedNames.forEach(consumer);
+    }
+
+    @Override
+    public void setEntry(UUID uuid, String name) throws StorageException {
+        Objects.requireNonNull(uuid);
+        Objects.requireNonNull(name);
+        setEntries(Collections.singletonMap(uuid, name));
+    }
+
+    @Override
+    public void setEntries(Map<UUID, String> entries) throws StorageException {
+        Objects.requireNonNull(entries);
+        if (entries.isEmpty()) {
+            return;
+        }
+        ByteArrayOutputStream records = new ByteArrayOutputStream(entries.size() * 36);
+        for (Map.Entry<UUID, String> entry : entries.entrySet()) {
+            records.write(RECORD_NAME);
+            writeUuid(records, entry.getKey());
+            writeString(records, entry.getValue());
+        }
+        append(records.toByteArray());
+    }
+
+    private void append(byte[] records) throws StorageException {
+        checkClosed();
+        rwLock.writeLock().lock();
+        try {
+            checkClosed();
+            ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_SIZE + records.length);
+            frame.putInt(records.length).putInt(checksum(records, 0, records.length)).put(records).flip();
+            try {
+                long position = log.position();
+                try {
+                    while (frame.hasRemaining()) {
+                        log.write(frame);
+                    }
+                    log.force(false);
+                } catch (IOException ex) {
+                    discardPartialFrame(position);
+                    throw ex;
+                }
+            } catch (IOException ex) {
+                throw new StorageException("could not write log " + logFile.getFileName(), ex);
+            }
+            applyRecords(ByteBuffer.wrap(records));
+            compactIfLarge();
+        } finally {
+            rwLock.writeLock().unlock();
+        }
+    }
+
+    private void discardPartialFrame(long position) {
+        try {
+            log.truncate(position);
+            log.position(position);
+        } catch (IOException ex) {
+            // replaying stops at the damaged frame
+        }
+    }
+
+    private void compactIfLarge() {
+        try {
+            if (log.size() > Math.max(MIN_COMPACTION_SIZE, snapshotSize)) {
+                compact();
+            }
+        } catch (IOException ex) {
+            // the write itself is durable, compaction is tried again on the next write
+        }
+    }
+
+    private void compact() throws IOException {
+        Map<UUID, String> latestNames = names.getLatestNames();
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream(onlineTimes.size() * 20 + latestNames.size() * 36 + 32);
+        ByteBuffer header = ByteBuffer.allocate(4 + 1 + 8);
+        header.putInt(SNAPSHOT_MAGIC).put(VERSION).putLong(generation + 1);
+        snapshot.write(header.array(), 0, header.capacity());
+        writeVarLong(snapshot, onlineTimes.size());
+        for (Map.Entry<UUID, Long> entry : onlineTimes.entrySet()) {
+            writeUuid(snapshot, entry.getKey());
+            writeZigZag(snapshot, entry.getValue());
+        }
+        writeVarLong(snapshot, latestNames.size());
+        for (Map.Entry<UUID, String> entry : latestNames.entrySet()) {
+            writeUuid(snapshot, entry.getKey());
+            writeString(snapshot, entry.getValue());
+        }
+        byte[] content = snapshot.toByteArray();
+        int checksum = checksum(content, 0, content.length);
+        snapshot.write(ByteBuffer.allocate(4).putInt(checksum).array(), 0, 4);
+        content = snapshot.toByteArray();
+
+        FileUtil.writeAtomically(snapshotFile, content);
+        generation++;
+        snapshotSize = content.length;
+        startLog();
+    }
+
+    /**
+     * Write all data to a new snapshot and start an empty log.
+     *
+     * @throws StorageException if the snapshot could not be written
+     */
+    public void compactNow() throws StorageException {
+        checkClosed();
+        rwLock.writeLock().lock();
+        try {
+            checkClosed();
+            compact();
+        } catch (IOException ex) {
+            throw new StorageException("could not compact log " + logFile.getFileName(), ex);
+        } finally {
+            rwLock.writeLock().unlock();
+        }
+    }
+
+    private static void writeUuid(ByteArrayOutputStream output, UUID uuid) {
+        output.write(UuidUtil.toBytes(uuid), 0, 16);
+    }
+
+    private static UUID readUuid(ByteBuffer input) {
+        return new UUID(input.getLong(), input.getLong());
+    }
+
+    private static void writeZigZag(ByteArrayOutputStream output, long value) {
+        writeVarLong(output, (value << 1) ^ (value >> 63));
+    }
+
+    private static long readZigZag(ByteBuffer input) throws StorageException {
+        long value = readVarLong(input);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream output, long value) {
+        while ((value & ~0x7fL) != 0) {
+            output.write((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        output.write((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer input) throws StorageException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = input.get();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new StorageException("malformed varint");
+    }
+
+    private static void writeString(ByteArrayOutputStream output, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(output, bytes.length);
+        output.write(bytes, 0, bytes.length);
+    }
+
+    private static String readString(ByteBuffer input) throws StorageException {
+        long length = readVarLong(input);
+        if (length > input.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[(int) length];
+        input.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int checksum(byte[] data, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, offset, length);
+        return (int) crc.getValue();
+    }
+
+    private void checkClosed() throws StorageException {
+        if (closed.get()) {
+            throw new StorageException("closed");
+        }
+    }
+
+    @Override
+    public void close() throws StorageException {
+        if (closed.get()) {
+            return;
+        }
+        rwLock.writeLock().lock();
+        try {
+            if (closed.compareAndSet(false, true)) {
+                try {
+                    compact();
+                } finally {
+                    log.close();
+                }
+            }
+        } catch (IOException ex) {
+            throw new StorageException("could not close binary log storage", ex);
+        } finally {
+            rwLock.writeLock().unlock();
+        }
+    }
+}
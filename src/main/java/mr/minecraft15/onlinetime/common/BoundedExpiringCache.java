@@ -0,0 +1,277 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Niklas Seyfarth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package mr.minecraft15.onlinetime.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Concurrent cache with an optional size limit and optional expiry after write and after last access.
+ * <p>
+ * Once the size limit is exceeded the least recently accessed entries are evicted in bulk, so the cache may briefly
+ * hold a few more entries than allowed. Expired entries are removed when they are read or during {@link #cleanUp()}.
+ * {@code null} values are never cached.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class BoundedExpiringCache<K, V> {
+
+    private final ConcurrentMap<K, Entry<V>> entries;
+    private final long maximumSize;
+    private final long expireAfterWriteNanos;
+    private final long expireAfterAccessNanos;
+    private final LongSupplier ticker;
+    private final Lock evictionLock;
+
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+
+    /**
+     * Create a new cache. Limits that are zero or negative are disabled.
+     *
+     * @param maximumSize maximum number of entries
+     * @param expireAfterWrite time after which an entry expires once it was written
+     * @param expireAfterAccess time after which an entry expires once it was last read or written
+     * @param unit unit of both expiry durations
+     */
+    public BoundedExpiringCache(long maximumSize, long expireAfterWrite, long expireAfterAccess, TimeUnit unit) {
+        this(maximumSize, expireAfterWrite, expireAfterAccess, unit, System::nanoTime);
+    }
+
+    BoundedExpiringCache(long maximumSize, long expireAfterWrite, long expireAfterAccess, TimeUnit unit, LongSupplier ticker) {
+        this.entries = new ConcurrentHashMap<>();
+        this.maximumSize = Math.max(0, maximumSize);
+        this.expireAfterWriteNanos = Math.max(0, unit.toNanos(expireAfterWrite));
+        this.expireAfterAccessNanos = Math.max(0, unit.toNanos(expireAfterAccess));
+        this.ticker = Objects.requireNonNull(ticker);
+        this.evictionLock = new ReentrantLock();
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+    }
+
+    /**
+     * Get the cached value or load and cache it. Concurrent loads of the same key are serialized.
+     *
+     * @param key key to look up
+     * @param loader function computing the value, may return {@code null} if there is none
+     * @return the value or {@code null}
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        Objects.requireNonNull(key);
+        long now = ticker.getAsLong();
+        Entry<V> entry = entries.get(key);
+        if (null != entry && !isExpired(entry, now)) {
+            entry.accessTime = now;
+            hits.increment();
+            return entry.value;
+        }
+        misses.increment();
+        Entry<V> loaded = entries.compute(key, (k, current) -> {
+            if (null != current) {
+                if (!isExpired(current, now)) {
+                    return current; // loaded concurrently
+                }
+                evictions.increment();
+            }
+            V value = loader.apply(k);
+            return null != value ? new Entry<>(value, now) : null;
+        });
+        evictIfNecessary();
+        return null != loaded ? loaded.value : null;
+    }
+
+    /**
+     * Get the cached value without loading it and without touching access time or statistics.
+     *
+     * @param key key to look up
+     * @return the value or {@code null}
+     */
+    public V peek(K key) {
+        Entry<V> entry = entries.get(Objects.requireNonNull(key));
+        if (null != entry && !isExpired(entry, ticker.getAsLong())) {
+            return entry.value;
+        }
+        return null;
+    }
+
+    /**
+     * Atomically replace the value of a key. The function receives {@code null} if nothing is cached and removes the
+     * entry by returning {@code null}. Does not count as hit or miss.
+     *
+     * @param key key to change
+     * @param remapping function computing the new value
+     * @return the new value or {@code null}
+     */
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remapping) {
+        Objects.requireNonNull(key);
+        long now = ticker.getAsLong();
+        Entry<V> computed = entries.compute(key, (k, current) -> {
+            V currentValue = null;
+            if (null != current) {
+                if (isExpired(current, now)) {
+                    evictions.increment();
+                } else {
+                    currentValue = current.value;
+                }
+            }
+            V value = remapping.apply(k, currentValue);
+            return null != value ? new Entry<>(value, now) : null;
+        });
+        evictIfNecessary();
+        return null != computed ? computed.value : null;
+    }
+
+    /**
+     * Pass every cached value that is not expired to the consumer, without touching access time or statistics.
+     *
+     * @param consumer receives key and value of every entry
+     */
+    public void forEach(BiConsumer<? super K, ? super V> consumer) {
+        Objects.requireNonNull(consumer);
+        long now = ticker.getAsLong();
+        entries.forEach((key, entry) -> {
+            if (!isExpired(entry, now)) {
+                consumer.accept(key, entry.value);
+            }
+        });
+    }
+
+    public void put(K key, V value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        entries.put(key, new Entry<>(value, ticker.getAsLong()));
+        evictIfNecessary();
+    }
+
+    public void invalidate(K key) {
+        entries.remove(Objects.requireNonNull(key));
+    }
+
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    /**
+     * Remove all expired entries and enforce the size limit.
+     */
+    public void cleanUp() {
+        evictionLock.lock();
+        try {
+            evict();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void evictIfNecessary() {
+        if (maximumSize > 0 && entries.size() > maximumSize && evictionLock.tryLock()) {
+            try {
+                evict();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    private void evict() {
+        long now = ticker.getAsLong();
+        if (expireAfterWriteNanos > 0 || expireAfterAccessNanos > 0) {
+            for (Map.Entry<K, Entry<V>> entry : entries.entrySet()) {
+                if (isExpired(entry.getValue(), now) && entries.remove(entry.getKey(), entry.getValue())) {
+                    evictions.increment();
+                }
+            }
+        }
+        if (maximumSize > 0 && entries.size() > maximumSize) {
+            // evict a tenth more than necessary so that not every insert has to sort the whole cache
+            long target = maximumSize - maximumSize / 10;
+            List<Map.Entry<K, Entry<V>>> candidates = new ArrayList<>(entries.entrySet());
+            candidates.sort((first, second) -> Long.compare(first.getValue().accessTime, second.getValue().accessTime));
+            for (Map.Entry<K, Entry<V>> candidate : candidates) {
+                if (entries.size() <= target) {
+                    break;
+                }
+                if (entries.remove(candidate.getKey(), candidate.getValue())) {
+                    evictions.increment();
+                }
+            }
+        }
+    }
+
+    private boolean isExpired(Entry<V> entry, long now) {
+        return (expireAfterWriteNanos > 0 && now - entry.writeTime >= expireAfterWriteNanos)
+                || (expireAfterAccessNanos > 0 && now - entry.accessTime >= expireAfterAccessNanos);
+    }
+
+    public long size() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return human readable size and hit, miss and eviction counters
+     */
+    public String statistics() {
+        return "size=" + size() + ", hits=" + getHitCount() + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount();
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long writeTime;
+        private volatile long accessTime;
+
+        private Entry(V value, long now) {
+            this.value = value;
+            this.writeTime = now;
+            this.accessTime = now;
+        }
+    }
+}
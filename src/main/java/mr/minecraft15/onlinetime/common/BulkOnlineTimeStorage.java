@@ -0,0 +1,55 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Niklas Seyfarth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package mr.minecraft15.onlinetime.common;
+
+import mr.minecraft15.onlinetime.api.OnlineTimeStorage;
+import mr.minecraft15.onlinetime.api.StorageException;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+
+/**
+ * Online time storage backend whose whole content can be read and written in bulk, which allows moving data between
+ * backends.
+ */
+public interface BulkOnlineTimeStorage extends OnlineTimeStorage {
+
+    /**
+     * Pass every stored online time to the consumer, ordered by {@link UuidUtil#BYTE_ORDER}.
+     *
+     * @param consumer receives uuid and online time of every player
+     * @throws StorageException wrapping exceptions of the underlying storage implementation
+     */
+    void forEachOnlineTime(BiConsumer<UUID, Long> consumer) throws StorageException;
+
+    /**
+     * Replace the online times of the players identified by the uuids.
+     *
+     * @param onlineTimes players and their new online time
+     * @throws StorageException wrapping exceptions of the underlying storage implementation
+     */
+    void setOnlineTimes(Map<UUID, Long> onlineTimes) throws StorageException;
+}
@@ -26,15 +26,41 @@ package mr.minecraft15.onlinetime.common;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
-import mr.minecraft15.onlinetime.api.OnlineTimeStorage;
+import mr.minecraft15.onlinetime.api.PartialWriteException;
 import mr.minecraft15.onlinetime.api.StorageException;
 
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
 
-public class DatabaseStorage implements PlayerNameStorage, OnlineTimeStorage {
+public class DatabaseStorage implements PlayerNameStorage, BulkOnlineTimeStorage {
+
+    /**
+     * Prefix of all properties interpreted by this storage instead of being passed to HikariCP.
+     */
+    public static final String PROPERTY_PREFIX = "onlinetime.";
+    /**
+     * Maximum number of rows written by a single multi-row statement.
+     */
+    public static final String BATCH_SIZE_PROPERTY = PROPERTY_PREFIX + "batchsize";
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    /**
+     * How often a transaction aborted by a deadlock is retried before giving up.
+     */
+    public static final String DEADLOCK_RETRIES_PROPERTY = PROPERTY_PREFIX + "deadlockretries";
+    public static final int DEFAULT_DEADLOCK_RETRIES = 3;
+    /**
+     * Number of server side prepared statements kept per pooled connection. With 0 the driver prepares statements on
+     * the client, which is its default.
+     */
+    public static final String STATEMENT_CACHE_PROPERTY = PROPERTY_PREFIX + "statementcache";
+    public static final int DEFAULT_STATEMENT_CACHE = 0;
+
+    private static final int ER_LOCK_WAIT_TIMEOUT = 1205;
+    private static final int ER_LOCK_DEADLOCK = 1213;
 
     private static final String CREATE_ONLINE_TIME_TABLE_SQL = "CREATE TABLE IF NOT EXISTS `online_time` (" +
             "`id`   INT NOT NULL AUTO_INCREMENT PRIMARY KEY," +
@@ -45,16 +71,40 @@ public class DatabaseStorage implements PlayerNameStorage, OnlineTimeStorage {
 
     private static final String GET_BY_UUID_SQL = "SELECT `name`, `time` FROM `online_time` WHERE `uuid` = ?";
     private static final String GET_BY_NAME_SQL = "SELECT `uuid` AS uuid FROM `online_time` WHERE `name` = ?";
-    private static final String UNSET_TAKEN_NAME_SQL = "UPDATE `online_time` SET name = NULL WHERE `uuid` = ?";
-    private static final String INSERT_OR_UPDATE_ENTRY_SQL = "INSERT INTO `online_time` (`uuid`, `name`, `time`) VALUES (?, ?, ?) ON DUPLICATE KEY UPDATE `name` = ?, `time` = `time` + ?";
+    private static final String RELEASE_NAMES_SQL_PREFIX = "UPDATE `online_time` SET `name` = NULL WHERE `name` IN (";
+    private static final String RELEASE_NAMES_SQL_INFIX = ") AND (`uuid`, `name`) NOT IN (";
+    private static final String INSERT_OR_ADD_TIME_SQL = "INSERT INTO `online_time` (`uuid`, `time`) VALUES (?, ?) ON DUPLICATE KEY UPDATE `time` = `time` + ?";
+    private static final String INSERT_OR_ADD_TIMES_SQL_PREFIX = "INSERT INTO `online_time` (`uuid`, `time`) VALUES ";
+    private static final String INSERT_OR_ADD_TIMES_SQL_SUFFIX = " ON DUPLICATE KEY UPDATE `time` = `time` + VALUES(`time`)";
+    private static final String INSERT_OR_SET_TIMES_SQL_SUFFIX = " ON DUPLICATE KEY UPDATE `time` = VALUES(`time`)";
+    private static final String GET_TIMES_PAGE_SQL = "SELECT `uuid`, `time` FROM `online_time` WHERE `uuid` > ? ORDER BY `uuid` LIMIT ?";
+    private static final String GET_NAMES_PAGE_SQL = "SELECT `uuid`, `name` FROM `online_time` WHERE `uuid` > ? AND `name` IS NOT NULL ORDER BY `uuid` LIMIT ?";
+    private static final String INSERT_OR_SET_NAMES_SQL_PREFIX = "INSERT INTO `online_time` (`uuid`, `name`) VALUES ";
+    private static final String INSERT_OR_SET_NAMES_SQL_SUFFIX = " ON DUPLICATE KEY UPDATE `name` = VALUES(`name`)";
+    private static final String TWO_VALUES_ROW_SQL = "(?, ?)";
 
     private final HikariDataSource dataSource;
     private final ReadWriteLock poolLock;
+    private final int batchSize;
+    private final int deadlockRetries;
 
     public DatabaseStorage(Properties properties) throws StorageException {
         this.poolLock = new ReentrantReadWriteLock();
 
-        HikariConfig databaseConfig = new HikariConfig(properties);
+        Properties hikariProperties = new Properties();
+        for (String key : properties.stringPropertyNames()) {
+            if (!key.startsWith(PROPERTY_PREFIX)) {
+                hikariProperties.setProperty(key, properties.getProperty(key));
+            }
+        }
+        this.batchSize = readInt(properties, BATCH_SIZE_PROPERTY, DEFAULT_BATCH_SIZE, 1);
+        this.deadlockRetries = readInt(properties, DEADLOCK_RETRIES_PROPERTY, DEFAULT_DEADLOCK_RETRIES, 0);
+        int statementCacheSize = readInt(properties, STATEMENT_CACHE_PROPERTY, DEFAULT_STATEMENT_CACHE, 0);
+        if (statementCacheSize > 0) {
+            enableStatementCache(hikariProperties, statementCacheSize);
+        }
+
+        HikariConfig databaseConfig = new HikariConfig(hikariProperties);
         databaseConfig.setPoolName("OnlineTime-DatabasePool");
         dataSource = new HikariDataSource(databaseConfig);
 
@@ -65,6 +115,55 @@ public class DatabaseStorage implements PlayerNameStorage, OnlineTimeStorage {
         }
     }
 
+    /**
+     * Let the MariaDB driver prepare statements on the server once per connection and reuse them. Options already set
+     * in the configuration are kept.
+     */
+    private static void enableStatementCache(Properties hikariProperties, int cacheSize) {
+        Map<String, String> driverOptions = new LinkedHashMap<>();
+        driverOptions.put("useServerPrepStmts", "true");
+        driverOptions.put("cachePrepStmts", "true");
+        driverOptions.put("prepStmtCacheSize", Integer.toString(cacheSize));
+        String jdbcUrl = hikariProperties.getProperty("jdbcUrl");
+        if (jdbcUrl != null) {
+            // passed on to the driver as connection properties, which take precedence over the url
+            driverOptions.forEach((key, value) -> {
+                if (!jdbcUrl.contains(key + "=")) {
+                    hikariProperties.putIfAbsent("dataSource." + key, value);
+                }
+            });
+        } else {
+            // MariaDbDataSource accepts further options only as a single query string
+            StringBuilder options = new StringBuilder(hikariProperties.getProperty("dataSource.properties", ""));
+            driverOptions.forEach((key, value) -> {
+                if (options.indexOf(key + "=") < 0) {
+                    options.append(options.length() == 0 ? "" : "&").append(key).append('=').append(value);
+                }
+            });
+            hikariProperties.setProperty("dataSource.properties", options.toString());
+        }
+    }
+
+    private static int readInt(Properties properties, String key, int defaultValue, int minimum) throws StorageException {
+        String value = properties.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            int parsed = Integer.parseInt(value.trim());
+            if (parsed < minimum) {
+                throw new StorageException(key + " must be at least " + minimum + ", but was " + parsed);
+            }
+            return parsed;
+        } catch (NumberFormatException ex) {
+            throw new StorageException(key + " is not a number: " + value, ex);
+        }
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
     @Override
     public Optional<UUID> getUuid(String name) throws StorageException {
         Objects.requireNonNull(name);
@@ -115,7 +214,7 @@ public class DatabaseStorage implements PlayerNameStorage, OnlineTimeStorage {
             getByUuidStmnt.setBytes(1, UuidUtil.toBytes(uuid));
             try (ResultSet result = getByUuidStmnt.executeQuery()) {
                 if (result.first()) {
-                    return Optional.of(result.getString("name"));
+                    return Optional.ofNullable(result.getString("name"));
                 } else {
                     return Optional.empty();
                 }
@@ -169,31 +268,84 @@ public class DatabaseStorage implements PlayerNameStorage, OnlineTimeStorage {
     }
 
     private void addOnlineTime(Connection connection, UUID uuid, long additionalOnlineTime) throws SQLException {
-        try (PreparedStatement insertOrUpdateEntryStmnt = connection.prepareStatement(INSERT_OR_UPDATE_ENTRY_SQL)) {
-            Optional<String> name = getName(connection, uuid);
-            insertOrUpdateEntryStmnt.setBytes(1, UuidUtil.toBytes(uuid));
-            if (name.isPresent()) {
-                insertOrUpdateEntryStmnt.setString(2, name.get());
-                insertOrUpdateEntryStmnt.setString(4, name.get());
+        try (PreparedStatement insertOrAddTimeStmnt = connection.prepareStatement(INSERT_OR_ADD_TIME_SQL)) {
+            insertOrAddTimeStmnt.setBytes(1, UuidUtil.toBytes(uuid));
+            insertOrAddTimeStmnt.setLong(2, Math.max(0, additionalOnlineTime));
+            insertOrAddTimeStmnt.setLong(3, additionalOnlineTime);
+            insertOrAddTimeStmnt.executeUpdate();
+        }
+    }
+
+    @Override
+    public void addOnlineTimes(Map<UUID, Long> additionalOnlineTimes) throws StorageException {
+        if (additionalOnlineTimes == null || additionalOnlineTimes.isEmpty()) {
+            return;
+        }
+        poolLock.readLock().lock();
+        try {
+            checkClosed();
+            Set<UUID> written = new HashSet<>();
+            try (Connection connection = dataSource.getConnection()) {
+                addOnlineTimes(connection, additionalOnlineTimes, written);
+            } catch (SQLException ex) {
+                if (written.isEmpty()) {
+                    throw new StorageException(ex);
+                }
+                Set<UUID> unwritten = new HashSet<>(additionalOnlineTimes.keySet());
+                unwritten.removeAll(written);
+                throw new PartialWriteException(ex, unwritten);
+            }
+        } finally {
+            poolLock.readLock().unlock();
+        }
+    }
+
+    private void addOnlineTimes(Connection connection, Map<UUID, Long> additionalOnlineTimes, Set<UUID> written) throws SQLException {
+        // VALUES(`time`) only carries the clamped insert value, so negative changes need their own statement
+        Map<UUID, Long> additions = new LinkedHashMap<>();
+        Map<UUID, Long> subtractions = new LinkedHashMap<>();
+        for (Map.Entry<UUID, Long> entry : additionalOnlineTimes.entrySet()) {
+            long additionalOnlineTime = entry.getValue();
+            if (additionalOnlineTime >= 0) {
+                additions.put(entry.getKey(), additionalOnlineTime);
             } else {
-                insertOrUpdateEntryStmnt.setNull(2, Types.CHAR);
-                insertOrUpdateEntryStmnt.setNull(4, Types.CHAR);
+                subtractions.put(entry.getKey(), additionalOnlineTime);
+            }
+        }
+        executeChunked(connection, additions, written, INSERT_OR_ADD_TIMES_SQL_PREFIX, INSERT_OR_ADD_TIMES_SQL_SUFFIX, (statement, index, uuid, additionalOnlineTime) -> {
+            statement.setBytes(index, UuidUtil.toBytes(uuid));
+            statement.setLong(index + 1, additionalOnlineTime);
+        });
+        if (!subtractions.isEmpty()) {
+            try (PreparedStatement insertOrAddTimeStmnt = connection.prepareStatement(INSERT_OR_ADD_TIME_SQL)) {
+                executeInTransaction(connection, () -> {
+                    insertOrAddTimeStmnt.clearBatch();
+                    for (Map.Entry<UUID, Long> entry : subtractions.entrySet()) {
+                        insertOrAddTimeStmnt.setBytes(1, UuidUtil.toBytes(entry.getKey()));
+                        insertOrAddTimeStmnt.setLong(2, 0);
+                        insertOrAddTimeStmnt.setLong(3, entry.getValue());
+                        insertOrAddTimeStmnt.addBatch();
+                    }
+                    insertOrAddTimeStmnt.executeBatch();
+                });
             }
-            insertOrUpdateEntryStmnt.setLong(3, Math.max(0, additionalOnlineTime));
-            insertOrUpdateEntryStmnt.setLong(5, additionalOnlineTime);
-            insertOrUpdateEntryStmnt.executeUpdate();
+            written.addAll(subtractions.keySet());
         }
     }
 
     @Override
-    public void addOnlineTimes(Map<UUID, Long> additionalOnlineTimes) throws StorageException {
-        if (additionalOnlineTimes == null) {
+    public void setOnlineTimes(Map<UUID, Long> onlineTimes) throws StorageException {
+        if (onlineTimes == null || onlineTimes.isEmpty()) {
             return;
         }
         poolLock.readLock().lock();
         try {
+            checkClosed();
             try (Connection connection = dataSource.getConnection()) {
-                addOnlineTimes(connection, additionalOnlineTimes);
+                executeChunked(connection, onlineTimes, new HashSet<>(), INSERT_OR_ADD_TIMES_SQL_PREFIX, INSERT_OR_SET_TIMES_SQL_SUFFIX, (statement, index, uuid, onlineTime) -> {
+                    statement.setBytes(index, UuidUtil.toBytes(uuid));
+                    statement.setLong(index + 1, Math.max(0, onlineTime));
+                });
             }
         } catch (SQLException ex) {
             throw new StorageException(ex);
@@ -202,28 +354,192 @@ public class DatabaseStorage implements PlayerNameStorage, OnlineTimeStorage {
         }
     }
 
-    private void addOnlineTimes(Connection connection, Map<UUID, Long> additionalOnlineTimes) throws SQLException {
-        try (PreparedStatement insertOrUpdateEntryStmnt = connection.prepareStatement(INSERT_OR_UPDATE_ENTRY_SQL)) {
-            for (Map.Entry<UUID, Long> entry : additionalOnlineTimes.entrySet()) {
-                UUID uuid = entry.getKey();
-                Optional<String> name = getName(connection, uuid);
-                long additionalOnlineTime = entry.getValue();
-                insertOrUpdateEntryStmnt.setBytes(1, UuidUtil.toBytes(uuid));
-                if (name.isPresent()) {
-                    insertOrUpdateEntryStmnt.setString(2, name.get());
-                    insertOrUpdateEntryStmnt.setString(4, name.get());
-                } else {
-                    insertOrUpdateEntryStmnt.setNull(2, Types.CHAR);
-                    insertOrUpdateEntryStmnt.setNull(4, Types.CHAR);
+    @Override
+    public void forEachOnlineTime(BiConsumer<UUID, Long> consumer) throws StorageException {
+        Objects.requireNonNull(consumer);
+        forEachPage(GET_TIMES_PAGE_SQL, result -> result.getLong("time"), consumer);
+    }
+
+    @Override
+    public void forEachEntry(BiConsumer<UUID, String> consumer) throws StorageException {
+        Objects.requireNonNull(consumer);
+        forEachPage(GET_NAMES_PAGE_SQL, result -> result.getString("name"), consumer);
+    }
+
+    /**
+     * Read all rows in pages of {@link #batchSize} rows ordered by uuid. No connection is held while the consumer runs.
+     */
+    private <V> void forEachPage(String sql, ColumnReader<V> reader, BiConsumer<UUID, V> consumer) throws StorageException {
+        byte[] lastUuid = new byte[0];
+        Map<UUID, V> page = new LinkedHashMap<>();
+        do {
+            page.clear();
+            poolLock.readLock().lock();
+            try {
+                checkClosed();
+                try (Connection connection = dataSource.getConnection();
+                     PreparedStatement pageStmnt = connection.prepareStatement(sql)) {
+                    pageStmnt.setBytes(1, lastUuid);
+                    pageStmnt.setInt(2, batchSize);
+                    try (ResultSet result = pageStmnt.executeQuery()) {
+                        while (result.next()) {
+                            lastUuid = result.getBytes("uuid");
+                            page.put(UuidUtil.fromBytes(lastUuid), reader.read(result));
+                        }
+                    }
                 }
-                insertOrUpdateEntryStmnt.setLong(3, Math.max(0, additionalOnlineTime));
-                insertOrUpdateEntryStmnt.setLong(5, additionalOnlineTime);
-                insertOrUpdateEntryStmnt.addBatch();
+            } catch (SQLException ex) {
+                throw new StorageException(ex);
+            } finally {
+                poolLock.readLock().unlock();
             }
-            insertOrUpdateEntryStmnt.executeBatch();
+            page.forEach(consumer);
+        } while (page.size() == batchSize);
+    }
+
+    @FunctionalInterface
+    private interface ColumnReader<V> {
+        V read(ResultSet result) throws SQLException;
+    }
+
+    /**
+     * Write all rows using multi-row statements of at most {@link #batchSize} rows. Every chunk is committed in its own
+     * transaction, so a failure leaves earlier chunks written and later chunks untouched. The uuids of committed rows
+     * are added to {@code written}.
+     */
+    private <V> void executeChunked(Connection connection, Map<UUID, V> rows, Set<UUID> written, String sqlPrefix, String sqlSuffix, RowBinder<V> binder) throws SQLException {
+        // same lock order in concurrent flushes avoids most deadlocks
+        executeChunked(connection, rows, written, Map.Entry.comparingByKey(), (chunkConnection, chunkEntries) -> {}, sqlPrefix, sqlSuffix, binder);
+    }
+
+    /**
+     * Write the rows in the given order with multi-row statements of up to {@link #batchSize} rows, each in its own
+     * transaction. The preparation runs in the transaction of each chunk before the chunk is written.
+     */
+    private <V> void executeChunked(Connection connection, Map<UUID, V> rows, Set<UUID> written, Comparator<Map.Entry<UUID, V>> order,
+                                    ChunkPreparation<V> preparation, String sqlPrefix, String sqlSuffix, RowBinder<V> binder) throws SQLException {
+        if (rows.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<UUID, V>> entries = new ArrayList<>(rows.entrySet());
+        entries.sort(order);
+        int fullChunks = entries.size() / batchSize;
+        if (fullChunks > 0) {
+            try (PreparedStatement chunkStmnt = connection.prepareStatement(buildMultiRowSql(sqlPrefix, sqlSuffix, batchSize))) {
+                for (int chunk = 0; chunk < fullChunks; chunk++) {
+                    List<Map.Entry<UUID, V>> chunkEntries = entries.subList(chunk * batchSize, (chunk + 1) * batchSize);
+                    executeInTransaction(connection, () -> {
+                        preparation.prepare(connection, chunkEntries);
+                        bindChunk(chunkStmnt, chunkEntries, binder);
+                        chunkStmnt.executeUpdate();
+                    });
+                    chunkEntries.forEach(entry -> written.add(entry.getKey()));
+                }
+            }
+        }
+        int remainder = entries.size() % batchSize;
+        if (remainder > 0) {
+            try (PreparedStatement remainderStmnt = connection.prepareStatement(buildMultiRowSql(sqlPrefix, sqlSuffix, remainder))) {
+                List<Map.Entry<UUID, V>> remainderEntries = entries.subList(fullChunks * batchSize, entries.size());
+                executeInTransaction(connection, () -> {
+                    preparation.prepare(connection, remainderEntries);
+                    bindChunk(remainderStmnt, remainderEntries, binder);
+                    remainderStmnt.executeUpdate();
+                });
+                remainderEntries.forEach(entry -> written.add(entry.getKey()));
+            }
+        }
+    }
+
+    private static <V> void bindChunk(PreparedStatement statement, List<Map.Entry<UUID, V>> chunkEntries, RowBinder<V> binder) throws SQLException {
+        int index = 1;
+        for (Map.Entry<UUID, V> entry : chunkEntries) {
+            binder.bind(statement, index, entry.getKey(), entry.getValue());
+            index += 2;
+        }
+    }
+
+    /**
+     * Run the action in a transaction and commit it. The action is rolled back and repeated up to
+     * {@link #deadlockRetries} times if the database aborted it because of a deadlock or lock wait timeout.
+     */
+    private void executeInTransaction(Connection connection, TransactionAction action) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            for (int attempt = 0; ; attempt++) {
+                try {
+                    action.execute();
+                    connection.commit();
+                    return;
+                } catch (SQLException ex) {
+                    try {
+                        connection.rollback();
+                    } catch (SQLException rollbackEx) {
+                        ex.addSuppressed(rollbackEx);
+                        throw ex;
+                    }
+                    if (attempt >= deadlockRetries || !isRetryable(ex)) {
+                        throw ex;
+                    }
+                    backOff(attempt, ex);
+                }
+            }
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static boolean isRetryable(SQLException ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException) {
+                SQLException sqlCause = (SQLException) cause;
+                if (sqlCause instanceof SQLTransactionRollbackException
+                        || "40001".equals(sqlCause.getSQLState())
+                        || sqlCause.getErrorCode() == ER_LOCK_DEADLOCK
+                        || sqlCause.getErrorCode() == ER_LOCK_WAIT_TIMEOUT) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void backOff(int attempt, SQLException cause) throws SQLException {
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(10, 50) * (attempt + 1));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw cause;
         }
     }
 
+    private static String buildMultiRowSql(String sqlPrefix, String sqlSuffix, int rows) {
+        StringBuilder sql = new StringBuilder(sqlPrefix.length() + rows * (TWO_VALUES_ROW_SQL.length() + 2) + sqlSuffix.length());
+        sql.append(sqlPrefix);
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(TWO_VALUES_ROW_SQL);
+        }
+        return sql.append(sqlSuffix).toString();
+    }
+
+    @FunctionalInterface
+    private interface ChunkPreparation<V> {
+        void prepare(Connection connection, List<Map.Entry<UUID, V>> chunkEntries) throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface RowBinder<V> {
+        void bind(PreparedStatement statement, int firstIndex, UUID uuid, V value) throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface TransactionAction {
+        void execute() throws SQLException;
+    }
 
     @Override
     public void setEntry(UUID uuid, String name) throws StorageException {
@@ -233,7 +549,7 @@ public class DatabaseStorage implements PlayerNameStorage, OnlineTimeStorage {
         try {
             checkClosed();
             try (Connection connection = dataSource.getConnection()) {
-                setEntry(connection, uuid, name);
+                setEntries(connection, Collections.singletonMap(uuid, name));
             }
         } catch (SQLException ex) {
             throw new StorageException(ex);
@@ -242,31 +558,14 @@ public class DatabaseStorage implements PlayerNameStorage, OnlineTimeStorage {
         }
     }
 
-    private void setEntry(Connection connection, UUID uuid, String name) throws SQLException {
-        Optional<UUID> oldNameHolder = getUuid(connection, name);
-        if (oldNameHolder.filter(oldUuid -> !oldUuid.equals(uuid)).isPresent()) { // name not unique ? update on duplicate uuid
-            try (PreparedStatement unsetTakenNameStmnt = connection.prepareStatement(UNSET_TAKEN_NAME_SQL)) {
-                unsetTakenNameStmnt.setBytes(1, UuidUtil.toBytes(oldNameHolder.get()));
-                unsetTakenNameStmnt.executeUpdate();
-            }
-        }
-        try (PreparedStatement insertOrUpdateEntryStmnt = connection.prepareStatement(INSERT_OR_UPDATE_ENTRY_SQL)) {
-            insertOrUpdateEntryStmnt.setBytes(1, UuidUtil.toBytes(uuid));
-            insertOrUpdateEntryStmnt.setString(2, name);
-            insertOrUpdateEntryStmnt.setString(4, name);
-            insertOrUpdateEntryStmnt.setLong(3, 0);
-            insertOrUpdateEntryStmnt.setLong(5, 0);
-            insertOrUpdateEntryStmnt.executeUpdate();
-        }
-    }
-
     @Override
     public void setEntries(Map<UUID, String> entries) throws StorageException {
-        if (entries == null) {
+        if (entries == null || entries.isEmpty()) {
             return;
         }
         poolLock.readLock().lock();
         try {
+            checkClosed();
             try (Connection connection = dataSource.getConnection()) {
                 setEntries(connection, entries);
             }
@@ -278,25 +577,43 @@ public class DatabaseStorage implements PlayerNameStorage, OnlineTimeStorage {
     }
 
     private void setEntries(Connection connection, Map<UUID, String> entries) throws SQLException {
-        try (PreparedStatement unsetTakenNameStmnt = connection.prepareStatement(UNSET_TAKEN_NAME_SQL);
-             PreparedStatement insertOrUpdateEntryStmnt = connection.prepareStatement(INSERT_OR_UPDATE_ENTRY_SQL)) {
-            for (Map.Entry<UUID, String> entry : entries.entrySet()) {
-                UUID uuid = entry.getKey();
-                String name = entry.getValue();
-                Optional<UUID> oldNameHolder = getUuid(connection, name);
-                if (oldNameHolder.filter(oldUuid -> !oldUuid.equals(uuid)).isPresent()) { // name not unique ? update on duplicate uuid
-                    unsetTakenNameStmnt.setBytes(1, UuidUtil.toBytes(oldNameHolder.get()));
-                    unsetTakenNameStmnt.addBatch();
-                }
-                insertOrUpdateEntryStmnt.setBytes(1, UuidUtil.toBytes(uuid));
-                insertOrUpdateEntryStmnt.setString(2, name);
-                insertOrUpdateEntryStmnt.setString(4, name);
-                insertOrUpdateEntryStmnt.setLong(3, 0);
-                insertOrUpdateEntryStmnt.setLong(5, 0);
-                insertOrUpdateEntryStmnt.addBatch();
+        // releasing the names locks rows in the order of the case insensitive name index, writing the rows in about that
+        // order as well makes concurrent writers wait instead of deadlock in most cases, the collation may still differ
+        executeChunked(connection, entries, new HashSet<>(), Map.Entry.comparingByValue(String.CASE_INSENSITIVE_ORDER), DatabaseStorage::releaseNames, INSERT_OR_SET_NAMES_SQL_PREFIX, INSERT_OR_SET_NAMES_SQL_SUFFIX, (statement, index, uuid, name) -> {
+            statement.setBytes(index, UuidUtil.toBytes(uuid));
+            statement.setString(index + 1, name);
+        });
+    }
+
+    /**
+     * Take the names of the chunk away from the players holding them, so that writing the chunk can not run into the
+     * unique key on `name`. Players that already have their name keep it, which leaves their index entries untouched.
+     */
+    private static void releaseNames(Connection connection, List<Map.Entry<UUID, String>> chunkEntries) throws SQLException {
+        StringBuilder sql = new StringBuilder(RELEASE_NAMES_SQL_PREFIX.length() + chunkEntries.size() * (TWO_VALUES_ROW_SQL.length() + 5)
+                + RELEASE_NAMES_SQL_INFIX.length() + 1);
+        sql.append(RELEASE_NAMES_SQL_PREFIX);
+        for (int i = 0; i < chunkEntries.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(RELEASE_NAMES_SQL_INFIX);
+        for (int i = 0; i < chunkEntries.size(); i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(TWO_VALUES_ROW_SQL);
+        }
+        sql.append(')');
+        try (PreparedStatement releaseNamesStmnt = connection.prepareStatement(sql.toString())) {
+            int index = 1;
+            for (Map.Entry<UUID, String> entry : chunkEntries) {
+                releaseNamesStmnt.setString(index++, entry.getValue());
+            }
+            for (Map.Entry<UUID, String> entry : chunkEntries) {
+                releaseNamesStmnt.setBytes(index++, UuidUtil.toBytes(entry.getKey()));
+                releaseNamesStmnt.setString(index++, entry.getValue());
             }
-            unsetTakenNameStmnt.executeBatch();
-            insertOrUpdateEntryStmnt.executeBatch();
+            releaseNamesStmnt.executeUpdate();
         }
     }
 
@@ -0,0 +1,168 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Niklas Seyfarth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package mr.minecraft15.onlinetime.common;
+
+import mr.minecraft15.onlinetime.api.PluginScheduler;
+import mr.minecraft15.onlinetime.api.PluginTask;
+import mr.minecraft15.onlinetime.api.StorageException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes a file at most once per delay. Changes are only marked, the file content is created and written by a
+ * background task that runs delay seconds after the first unsaved change. A delay of zero saves on every change.
+ * <p>
+ * The file is replaced atomically. If a journal is given, the content supplier has to set a checkpoint on it while
+ * creating the content; the journal is then truncated to that checkpoint after the file was saved.
+ */
+public class DeferredFileSaver implements AutoCloseable {
+
+    /**
+     * Serializes the current state of the file. Must be safe to call concurrently to modifications.
+     */
+    @FunctionalInterface
+    public interface ContentSupplier {
+        String get() throws StorageException;
+    }
+
+    private final File file;
+    private final ContentSupplier content;
+    private final FileStorageJournal journal;
+    private final PluginScheduler scheduler;
+    private final long delay;
+    private final Logger logger;
+
+    private final AtomicBoolean dirty;
+    private final Lock saveLock;
+    private volatile PluginTask pendingSave;
+
+    public DeferredFileSaver(File file, ContentSupplier content, FileStorageJournal journal, PluginScheduler scheduler, long delay, Logger logger) {
+        this.file = Objects.requireNonNull(file);
+        this.content = Objects.requireNonNull(content);
+        this.journal = journal;
+        this.scheduler = Objects.requireNonNull(scheduler);
+        this.delay = delay;
+        this.logger = Objects.requireNonNull(logger);
+
+        this.dirty = new AtomicBoolean(false);
+        this.saveLock = new ReentrantLock();
+    }
+
+    /**
+     * Mark the file content as changed. Must be called after the change is visible to the content supplier.
+     *
+     * @throws StorageException if the file is saved immediately and saving fails
+     */
+    public void markDirty() throws StorageException {
+        if (delay <= 0) {
+            dirty.set(true);
+            saveIfDirty();
+        } else if (dirty.compareAndSet(false, true)) {
+            try {
+                pendingSave = scheduler.runAsyncOnceLater(delay, this::saveInBackground);
+            } catch (RuntimeException ex) {
+                // the scheduler rejects tasks while the plugin is disabled
+                saveIfDirty();
+            }
+        }
+    }
+
+    private void saveInBackground() {
+        try {
+            saveIfDirty();
+        } catch (StorageException ex) {
+            logger.log(Level.SEVERE, "could not save " + file.getName() + ", retrying in " + delay + " seconds", ex);
+            if (dirty.compareAndSet(true, false)) {
+                try {
+                    markDirty();
+                } catch (StorageException retryEx) {
+                    logger.log(Level.SEVERE, "could not save " + file.getName(), retryEx);
+                }
+            }
+        }
+    }
+
+    /**
+     * Write the file now if there are unsaved changes.
+     *
+     * @throws StorageException if the content could not be created or written
+     */
+    public void saveIfDirty() throws StorageException {
+        saveLock.lock();
+        try {
+            // cleared before reading the content, so changes made meanwhile mark the file again
+            if (!dirty.getAndSet(false)) {
+                return;
+            }
+            boolean saved = false;
+            try {
+                FileUtil.writeAtomically(file.toPath(), content.get().getBytes(StandardCharsets.UTF_8));
+                saved = true;
+            } catch (IOException ex) {
+                throw new StorageException("could not save " + file.getName(), ex);
+            } finally {
+                if (!saved) {
+                    dirty.set(true);
+                }
+            }
+            if (journal != null) {
+                journal.truncateToCheckpoint();
+            }
+        } finally {
+            saveLock.unlock();
+        }
+    }
+
+    /**
+     * Write the file now, regardless of whether changes were marked.
+     *
+     * @throws StorageException if the content could not be created or written
+     */
+    public void save() throws StorageException {
+        dirty.set(true);
+        saveIfDirty();
+    }
+
+    public boolean isDirty() {
+        return dirty.get();
+    }
+
+    @Override
+    public void close() throws StorageException {
+        PluginTask task = pendingSave;
+        if (task != null) {
+            task.cancel();
+        }
+        saveIfDirty();
+    }
+}
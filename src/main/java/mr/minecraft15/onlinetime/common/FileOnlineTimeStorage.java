@@ -25,12 +25,12 @@
 package mr.minecraft15.onlinetime.common;
 
 import mr.minecraft15.onlinetime.api.FileStorageProvider;
-import mr.minecraft15.onlinetime.api.OnlineTimeStorage;
 import mr.minecraft15.onlinetime.api.StorageException;
 
 import java.util.*;
+import java.util.function.BiConsumer;
 
-public class FileOnlineTimeStorage implements OnlineTimeStorage {
+public class FileOnlineTimeStorage implements BulkOnlineTimeStorage {
 
     private final FileStorageProvider storageProvider;
 
@@ -80,6 +80,28 @@ public class FileOnlineTimeStorage implements OnlineTimeStorage {
         storageProvider.writeAll(writeData);
     }
 
+    @Override
+    public void forEachOnlineTime(BiConsumer<UUID, Long> consumer) throws StorageException {
+        Objects.requireNonNull(consumer);
+        Map<UUID, Long> sortedOnlineTimes = new TreeMap<>(UuidUtil.BYTE_ORDER);
+        storageProvider.forEach((path, value) -> {
+            if (value instanceof Long || value instanceof Integer) {
+                UuidUtil.fromString(path).ifPresent(uuid -> sortedOnlineTimes.put(uuid, ((Number) value).longValue()));
+            }
+        });
+        sortedOnlineTimes.forEach(consumer);
+    }
+
+    @Override
+    public void setOnlineTimes(Map<UUID, Long> onlineTimes) throws StorageException {
+        Objects.requireNonNull(onlineTimes);
+        Map<String, Long> writeData = new HashMap<>();
+        for (Map.Entry<UUID, Long> entry : onlineTimes.entrySet()) {
+            writeData.put(entry.getKey().toString(), entry.getValue());
+        }
+        storageProvider.writeAll(writeData);
+    }
+
     @Override
     public void close() throws StorageException {
         storageProvider.close();
@@ -28,53 +28,112 @@ import mr.minecraft15.onlinetime.api.FileStorageProvider;
 import mr.minecraft15.onlinetime.api.StorageException;
 
 import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
 
+/**
+ * Player name storage on top of a file storage provider. The file maps each name to a uuid, so old names of a player are
+ * kept. All entries are indexed in memory when the storage is created and names are compared case insensitively;
+ * {@link #getName(UUID)} returns the name that was set last, or any of the player's names if none was set since loading.
+ */
 public class FilePlayerNameStorage implements PlayerNameStorage {
 
     private final FileStorageProvider storageProvider;
+    private final PlayerNameIndex index;
+    private final Lock writeLock;
 
-    public FilePlayerNameStorage(FileStorageProvider storageProvider) {
+    public FilePlayerNameStorage(FileStorageProvider storageProvider) throws StorageException {
         this.storageProvider = Objects.requireNonNull(storageProvider);
+        this.index = new PlayerNameIndex();
+        this.writeLock = new ReentrantLock();
+        loadIndex();
+    }
+
+    private void loadIndex() throws StorageException {
+        storageProvider.forEach((name, uuid) -> {
+            if (uuid != null) {
+                UuidUtil.fromString(uuid.toString()).ifPresent(value -> index.put(value, name));
+            }
+        });
     }
 
     @Override
     public Optional<UUID> getUuid(String playerName) throws StorageException {
         Objects.requireNonNull(playerName);
-        Object uuid = storageProvider.read(playerName);
-        if (null == uuid) {
-            return Optional.empty();
-        } else {
-            return UuidUtil.fromString(uuid.toString());
-        }
+        return index.getUuid(playerName);
     }
 
     @Override
     public Optional<String> getName(UUID uuid) throws StorageException {
-        String value = Objects.requireNonNull(uuid).toString();
-        return storageProvider.readAll().entrySet().parallelStream()
-                .filter(entry -> value.equals(entry.getValue()))
-                .findFirst()
-                .map(Map.Entry::getKey);
+        Objects.requireNonNull(uuid);
+        return index.getName(uuid);
+    }
+
+    @Override
+    public List<String> findNames(String prefix, int limit) {
+        return index.findNames(prefix, limit);
+    }
+
+    @Override
+    public void forEachEntry(BiConsumer<UUID, String> consumer) {
+        Objects.requireNonNull(consumer);
+        Map<UUID, String> sortedNames = new TreeMap<>(UuidUtil.BYTE_ORDER);
+        sortedNames.putAll(index.getLatestNames());
+        sortedNames.forEach(consumer);
     }
 
     @Override
     public void setEntry(UUID uuid, String name) throws StorageException {
         Objects.requireNonNull(uuid);
         Objects.requireNonNull(name);
-        storageProvider.write(name, uuid.toString());
+        // keeps file and index in the same order
+        writeLock.lock();
+        try {
+            Map<String, String> data = new HashMap<>();
+            removeOtherSpelling(name, data);
+            if (data.isEmpty()) {
+                storageProvider.write(name, uuid.toString());
+            } else {
+                data.put(name, uuid.toString());
+                storageProvider.writeAll(data);
+            }
+            index.put(uuid, name);
+        } finally {
+            writeLock.unlock();
+        }
     }
 
     @Override
     public void setEntries(Map<UUID, String> entries) throws StorageException {
         Objects.requireNonNull(entries);
-        Map<String, String> data = new HashMap<>();
-        for (Map.Entry<UUID, String> entry : entries.entrySet()) {
-            String previous = data.put(entry.getValue(), entry.getKey().toString());
-            if (previous != null) {
-                throw new StorageException("duplicate name: " + entry.getValue());
+        Set<String> keys = new HashSet<>();
+        for (String name : entries.values()) {
+            if (!keys.add(name.toLowerCase(Locale.ROOT))) {
+                throw new StorageException("duplicate name: " + name);
             }
         }
-        storageProvider.writeAll(data);
+        writeLock.lock();
+        try {
+            Map<String, String> data = new HashMap<>();
+            for (Map.Entry<UUID, String> entry : entries.entrySet()) {
+                removeOtherSpelling(entry.getValue(), data);
+            }
+            for (Map.Entry<UUID, String> entry : entries.entrySet()) {
+                data.put(entry.getValue(), entry.getKey().toString());
+            }
+            storageProvider.writeAll(data);
+            index.putAll(entries);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // the file is case sensitive, a name stored with other case would still be found when loading the index
+    private void removeOtherSpelling(String name, Map<String, String> data) {
+        index.getSpelling(name)
+                .filter(stored -> !stored.equals(name))
+                .ifPresent(stored -> data.put(stored, null));
     }
 
     @Override
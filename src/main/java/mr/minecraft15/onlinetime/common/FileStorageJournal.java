@@ -0,0 +1,319 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Niklas Seyfarth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package mr.minecraft15.onlinetime.common;
+
+import mr.minecraft15.onlinetime.api.StorageException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the changes made to a storage file since it was last saved. Every record holds the new value of
+ * one path, so replaying the journal on top of the last saved file restores all changes that were not saved yet.
+ * <p>
+ * A record is its payload length, the CRC32 of the payload and the payload itself. Replaying stops at the first
+ * incomplete or damaged record, which is what remains of an append interrupted by a crash.
+ * <p>
+ * Appending only writes the records, {@link #force()} syncs them to disk. Callers append while holding their storage
+ * lock and force after releasing it, so readers never wait for a sync.
+ */
+public class FileStorageJournal implements AutoCloseable {
+
+    private static final int HEADER_SIZE = 8;
+
+    private static final byte TYPE_DELETE = 0;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_LONG = 2;
+    private static final byte TYPE_INTEGER = 3;
+
+    private final Path path;
+    private final Object forceLock = new Object();
+    private FileChannel channel;
+    private long checkpoint;
+    private boolean closed;
+    private long appended;
+    private volatile long forced;
+
+    public FileStorageJournal(File file) throws StorageException {
+        this.path = Objects.requireNonNull(file).toPath();
+        this.channel = open();
+        this.checkpoint = 0;
+        this.closed = false;
+    }
+
+    private FileChannel open() throws StorageException {
+        try {
+            FileChannel opened = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            opened.position(opened.size());
+            return opened;
+        } catch (IOException ex) {
+            throw new StorageException("could not open journal " + path.getFileName(), ex);
+        }
+    }
+
+    /**
+     * Read all intact records. A damaged tail is cut off, so new records are appended directly after the last intact
+     * one.
+     *
+     * @return the latest value of every changed path in order of the changes, {@code null} for deleted paths
+     * @throws StorageException if the journal could not be read
+     */
+    public synchronized Map<String, Object> replay() throws StorageException {
+        checkClosed();
+        Map<String, Object> changes = new LinkedHashMap<>();
+        long valid = 0;
+        try {
+            channel.position(0);
+            DataInputStream input = new DataInputStream(Channels.newInputStream(channel));
+            long size = channel.size();
+            while (size - valid >= HEADER_SIZE) {
+                int length = input.readInt();
+                int checksum = input.readInt();
+                if (length < 0 || length > size - valid - HEADER_SIZE) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                input.readFully(payload);
+                if (checksum != checksum(payload)) {
+                    break;
+                }
+                readRecord(payload, changes);
+                valid += HEADER_SIZE + length;
+            }
+            if (valid < size) {
+                channel.truncate(valid);
+                channel.force(false);
+            }
+            channel.position(valid);
+        } catch (IOException ex) {
+            throw new StorageException("could not read journal " + path.getFileName(), ex);
+        }
+        return changes;
+    }
+
+    private static void readRecord(byte[] payload, Map<String, Object> changes) throws IOException {
+        DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+        String key = record.readUTF();
+        Object value;
+        switch (record.readByte()) {
+            case TYPE_DELETE:
+                value = null;
+                break;
+            case TYPE_STRING:
+                value = record.readUTF();
+                break;
+            case TYPE_LONG:
+                value = record.readLong();
+                break;
+            case TYPE_INTEGER:
+                value = record.readInt();
+                break;
+            default:
+                throw new IOException("unknown journal record type");
+        }
+        // keep the order of the latest changes
+        changes.remove(key);
+        changes.put(key, value);
+    }
+
+    public void append(String key, Object value) throws StorageException {
+        append(Collections.singletonMap(key, value));
+    }
+
+    /**
+     * Append the new values of the given paths. They are only durable after the next {@link #force()}.
+     *
+     * @param changes new values, {@code null} for deleted paths
+     * @throws StorageException if a value type is not supported or the journal could not be written
+     */
+    public synchronized void append(Map<String, ?> changes) throws StorageException {
+        checkClosed();
+        if (changes.isEmpty()) {
+            return;
+        }
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        try {
+            DataOutputStream output = new DataOutputStream(records);
+            for (Map.Entry<String, ?> change : changes.entrySet()) {
+                byte[] payload = writeRecord(change.getKey(), change.getValue());
+                output.writeInt(payload.length);
+                output.writeInt(checksum(payload));
+                output.write(payload);
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(records.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            appended++;
+        } catch (IOException ex) {
+            throw new StorageException("could not write journal " + path.getFileName(), ex);
+        }
+    }
+
+    /**
+     * Sync all records appended so far to disk. Concurrent callers share one sync, appending is not blocked meanwhile.
+     *
+     * @throws StorageException if the journal could not be synced
+     */
+    public void force() throws StorageException {
+        long target;
+        synchronized (this) {
+            target = appended;
+        }
+        if (forced >= target) {
+            return;
+        }
+        synchronized (forceLock) {
+            if (forced >= target) {
+                return; // synced by a concurrent call
+            }
+            FileChannel forcedChannel;
+            long covered;
+            synchronized (this) {
+                if (closed) {
+                    return; // the storage file was saved before closing
+                }
+                forcedChannel = channel;
+                covered = appended;
+            }
+            try {
+                forcedChannel.force(false);
+            } catch (ClosedChannelException ex) {
+                // replaced by truncateToCheckpoint, which synced the kept records to the new file
+            } catch (IOException ex) {
+                throw new StorageException("could not sync journal " + path.getFileName(), ex);
+            }
+            forced = covered;
+        }
+    }
+
+    private static byte[] writeRecord(String key, Object value) throws IOException, StorageException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(64);
+        DataOutputStream record = new DataOutputStream(payload);
+        record.writeUTF(key);
+        if (value == null) {
+            record.writeByte(TYPE_DELETE);
+        } else if (value instanceof String) {
+            record.writeByte(TYPE_STRING);
+            record.writeUTF((String) value);
+        } else if (value instanceof Long) {
+            record.writeByte(TYPE_LONG);
+            record.writeLong((Long) value);
+        } else if (value instanceof Integer) {
+            record.writeByte(TYPE_INTEGER);
+            record.writeInt((Integer) value);
+        } else {
+            throw new StorageException("unsupported journal value type " + value.getClass().getName());
+        }
+        return payload.toByteArray();
+    }
+
+    private static int checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Remember the current end of the journal. Must be called while no records are appended and the content of the
+     * storage file is created, so that all records up to here are part of that content.
+     */
+    public synchronized void checkpoint() throws StorageException {
+        checkClosed();
+        try {
+            checkpoint = channel.size();
+        } catch (IOException ex) {
+            throw new StorageException("could not read journal " + path.getFileName(), ex);
+        }
+    }
+
+    /**
+     * Remove all records up to the last checkpoint after the storage file was saved. Records appended since are kept.
+     *
+     * @throws StorageException if the journal could not be rewritten
+     */
+    public synchronized void truncateToCheckpoint() throws StorageException {
+        if (closed || checkpoint == 0) {
+            return;
+        }
+        try {
+            long size = channel.size();
+            if (checkpoint >= size) {
+                channel.truncate(0);
+                channel.force(false);
+            } else {
+                ByteBuffer remaining = ByteBuffer.allocate((int) (size - checkpoint));
+                while (remaining.hasRemaining()) {
+                    if (channel.read(remaining, checkpoint + remaining.position()) < 0) {
+                        throw new IOException("unexpected end of journal");
+                    }
+                }
+                channel.close();
+                try {
+                    FileUtil.writeAtomically(path, remaining.array());
+                } finally {
+                    channel = open();
+                }
+            }
+            checkpoint = 0;
+        } catch (IOException ex) {
+            throw new StorageException("could not truncate journal " + path.getFileName(), ex);
+        }
+    }
+
+    private void checkClosed() throws StorageException {
+        if (closed) {
+            throw new StorageException("closed");
+        }
+    }
+
+    @Override
+    public synchronized void close() throws StorageException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            throw new StorageException("could not close journal " + path.getFileName(), ex);
+        }
+    }
+}
@@ -0,0 +1,595 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Niklas Seyfarth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package mr.minecraft15.onlinetime.common;
+
+import mr.minecraft15.onlinetime.api.FileStorageProvider;
+import mr.minecraft15.onlinetime.api.StorageException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Yaml file storage provider that does not parse the file before it is used. On creation only the offsets of the top
+ * level entries are indexed, while the actual provider loads the file in the background. Until it is ready, reads are
+ * answered by parsing the indexed line of the requested entry and writes wait for the load to finish.
+ * <p>
+ * Only files with one plain scalar per line, as saved by this plugin, can be indexed. Any other file, or a file with
+ * unsaved changes in its journal, is read through the loaded provider right away.
+ */
+public class LazyFileStorageProvider implements FileStorageProvider {
+
+    private static final Set<String> RESERVED_WORDS = new HashSet<>(Arrays.asList(
+            "y", "n", "yes", "no", "on", "off", "true", "false", "null"));
+
+    // entries are packed as offset << LENGTH_BITS | length
+    private static final int LENGTH_BITS = 16;
+    private static final int MAX_LINE_LENGTH = (1 << LENGTH_BITS) - 1;
+
+    private static final int INVALID = 0;
+    private static final int PLAIN = 1;
+    private static final int NUMBER = 2;
+    private static final int QUOTED = 3;
+
+    private static final Object UNKNOWN = new Object();
+
+    private final File file;
+    private final CompletableFuture<FileStorageProvider> provider;
+
+    private final ReadWriteLock indexLock;
+    private OffsetIndex index;
+    private FileChannel channel;
+
+    private final AtomicBoolean closed;
+
+    /**
+     * Index a yaml file and start loading it in the background.
+     *
+     * @param directory storage directory
+     * @param fileName name of the yaml file
+     * @param factory creates the provider which loads the whole file
+     */
+    public LazyFileStorageProvider(File directory, String fileName, ShardedFileStorageProvider.ProviderFactory factory) {
+        Objects.requireNonNull(directory);
+        Objects.requireNonNull(fileName);
+        Objects.requireNonNull(factory);
+        this.file = new File(directory, fileName);
+        this.provider = new CompletableFuture<>();
+        this.indexLock = new ReentrantReadWriteLock();
+        this.closed = new AtomicBoolean(false);
+
+        if (file.isFile() && new File(file.getPath() + ".journal").length() == 0) {
+            try {
+                OffsetIndex offsets = new OffsetIndex();
+                if (scan(file, (line, length, offset) -> offsets.put(line, length, offset))) {
+                    this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                    this.index = offsets;
+                }
+            } catch (IOException ex) {
+                this.index = null;
+            }
+        }
+
+        // the plugin scheduler may not run tasks before the server has started
+        Thread loader = new Thread(() -> load(factory, fileName), "OnlineTime loader " + fileName);
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    private void load(ShardedFileStorageProvider.ProviderFactory factory, String fileName) {
+        FileStorageProvider loaded;
+        try {
+            loaded = factory.create(fileName);
+        } catch (Throwable ex) {
+            dropIndex();
+            provider.completeExceptionally(ex);
+            return;
+        }
+        dropIndex();
+        provider.complete(loaded);
+    }
+
+    private void dropIndex() {
+        indexLock.writeLock().lock();
+        try {
+            index = null;
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        } catch (IOException ignored) {
+            // the file was only read
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+
+    @FunctionalInterface
+    private interface LineVisitor {
+        boolean visit(byte[] line, int length, long offset);
+    }
+
+    private static boolean scan(File file, LineVisitor visitor) throws IOException {
+        try (InputStream input = new FileInputStream(file)) {
+            byte[] buffer = new byte[1 << 16];
+            byte[] line = new byte[256];
+            int length = 0;
+            long lineStart = 0;
+            long position = 0;
+            int read;
+            while ((read = input.read(buffer)) >= 0) {
+                for (int i = 0; i < read; i++, position++) {
+                    if (buffer[i] != '\n') {
+                        if (length == MAX_LINE_LENGTH) {
+                            return false;
+                        }
+                        if (length == line.length) {
+                            line = Arrays.copyOf(line, line.length * 2);
+                        }
+                        line[length++] = buffer[i];
+                    } else {
+                        if (!visitor.visit(line, length, lineStart)) {
+                            return false;
+                        }
+                        lineStart = position + 1;
+                        length = 0;
+                    }
+                }
+            }
+            return visitor.visit(line, length, lineStart);
+        }
+    }
+
+    private static boolean isIgnored(byte[] line, int length) {
+        int start = 0;
+        while (start < length && (line[start] == ' ' || line[start] == '\t' || line[start] == '\r')) {
+            start++;
+        }
+        return start == length || line[start] == '#' || matches(line, start, length, "{}") || matches(line, start, length, "---");
+    }
+
+    private static boolean matches(byte[] line, int start, int length, String token) {
+        int end = length;
+        while (end > start && (line[end - 1] == ' ' || line[end - 1] == '\r')) {
+            end--;
+        }
+        if (end - start != token.length()) {
+            return false;
+        }
+        for (int i = 0; i < token.length(); i++) {
+            if (line[start + i] != token.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return index of the ": " separating key and value, or -1 if the line is no indexable entry
+     */
+    private static int keyEnd(byte[] line, int length) {
+        if (length == 0) {
+            return -1;
+        }
+        if (line[0] == '\'' || line[0] == '"') {
+            int end = closingQuote(line, 0, length);
+            return end >= 0 && end + 2 < length && line[end + 1] == ':' && line[end + 2] == ' ' ? end + 1 : -1;
+        }
+        for (int i = 0; i + 1 < length; i++) {
+            if (line[i] == ':' && line[i + 1] == ' ') {
+                int type = scalarType(line, 0, i);
+                return type == PLAIN || type == NUMBER && line[0] >= '0' && line[0] <= '9' ? i : -1;
+            }
+        }
+        return -1;
+    }
+
+    private static String key(byte[] line, int keyEnd) {
+        String key = line[0] == '\'' || line[0] == '"' ? unquote(line, 0, keyEnd) : new String(line, 0, keyEnd, StandardCharsets.UTF_8);
+        return key == null || key.isEmpty() || key.indexOf('.') >= 0 ? null : key;
+    }
+
+    private static int valueStart(byte[] line, int length, int keyEnd) {
+        int start = keyEnd + 1;
+        while (start < length && line[start] == ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    private static int valueEnd(byte[] line, int length) {
+        int end = length;
+        while (end > 0 && (line[end - 1] == ' ' || line[end - 1] == '\r')) {
+            end--;
+        }
+        return end;
+    }
+
+    private static int scalarType(byte[] line, int start, int end) {
+        if (start >= end) {
+            return INVALID;
+        }
+        if (line[start] == '\'' || line[start] == '"') {
+            return closingQuote(line, start, end) == end - 1 && (line[start] == '\'' || indexOf(line, start, end, '\\') < 0) ? QUOTED : INVALID;
+        }
+        if (isInteger(line, start, end)) {
+            return NUMBER;
+        }
+        if (isUuid(line, start, end)) {
+            return PLAIN;
+        }
+        for (int i = start; i < end; i++) {
+            byte c = line[i];
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '_' || c >= '0' && c <= '9' && i > start)) {
+                return INVALID;
+            }
+        }
+        if (end - start <= 5 && RESERVED_WORDS.contains(new String(line, start, end - start, StandardCharsets.US_ASCII).toLowerCase(Locale.ROOT))) {
+            return INVALID;
+        }
+        return PLAIN;
+    }
+
+    private static boolean isInteger(byte[] line, int start, int end) {
+        int digits = line[start] == '-' || line[start] == '+' ? start + 1 : start;
+        // at most 18 digits always fit into a long
+        if (digits == end || end - digits > 18 || line[digits] == '0' && end - digits > 1) {
+            return false;
+        }
+        for (int i = digits; i < end; i++) {
+            if (line[i] < '0' || line[i] > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isUuid(byte[] line, int start, int end) {
+        if (end - start != 36) {
+            return false;
+        }
+        for (int i = 0; i < 36; i++) {
+            byte c = line[start + i];
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return false;
+                }
+            } else if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'f' || c >= 'A' && c <= 'F')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(byte[] line, int start, int end, char c) {
+        for (int i = start; i < end; i++) {
+            if (line[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int closingQuote(byte[] line, int start, int end) {
+        byte quote = line[start];
+        for (int i = start + 1; i < end; i++) {
+            if (line[i] == quote) {
+                if (quote == '\'' && i + 1 < end && line[i + 1] == '\'') {
+                    i++;
+                } else {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static String unquote(byte[] line, int start, int end) {
+        String content = new String(line, start + 1, end - start - 2, StandardCharsets.UTF_8);
+        if (line[start] == '\'') {
+            return content.replace("''", "'");
+        }
+        // escape sequences are left to the yaml parser
+        return content.indexOf('\\') < 0 ? content : null;
+    }
+
+    private static Object value(byte[] line, int start, int end) {
+        switch (scalarType(line, start, end)) {
+            case QUOTED:
+                String string = unquote(line, start, end);
+                return string == null ? UNKNOWN : string;
+            case NUMBER:
+                long number = Long.parseLong(new String(line, start, end - start, StandardCharsets.US_ASCII));
+                if (number >= Integer.MIN_VALUE && number <= Integer.MAX_VALUE) {
+                    return (int) number;
+                }
+                return number;
+            case PLAIN:
+                return new String(line, start, end - start, StandardCharsets.US_ASCII);
+            default:
+                return UNKNOWN;
+        }
+    }
+
+    private static long hash(byte[] bytes, int start, int end) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = start; i < end; i++) {
+            hash = (hash ^ (bytes[i] & 0xff)) * 0x100000001b3L;
+        }
+        return hash ^ (hash >>> 29);
+    }
+
+    private static long keyHash(byte[] line, int keyEnd) {
+        if (line[0] == '\'' || line[0] == '"') {
+            String key = key(line, keyEnd);
+            if (key == null) {
+                return 0;
+            }
+            byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+            return hash(bytes, 0, bytes.length);
+        }
+        return hash(line, 0, keyEnd);
+    }
+
+    /**
+     * Open addressing table from the hash of a top level key to the position of its line. Lines of keys with equal
+     * hashes replace each other, reading a line verifies its key.
+     */
+    private static class OffsetIndex {
+
+        private long[] hashes = new long[1024];
+        private long[] entries = new long[1024];
+        private int size;
+
+        boolean put(byte[] line, int length, long offset) {
+            if (isIgnored(line, length)) {
+                return true;
+            }
+            int keyEnd = keyEnd(line, length);
+            if (keyEnd < 0 || indexOf(line, 0, keyEnd, '.') >= 0
+                    || (line[0] == '\'' || line[0] == '"') && key(line, keyEnd) == null
+                    || scalarType(line, valueStart(line, length, keyEnd), valueEnd(line, length)) == INVALID) {
+                return false;
+            }
+            if (size * 4 >= entries.length * 3) {
+                grow();
+            }
+            insert(keyHash(line, keyEnd), offset << LENGTH_BITS | length);
+            return true;
+        }
+
+        private void insert(long hash, long entry) {
+            int mask = entries.length - 1;
+            int slot = (int) hash & mask;
+            while (entries[slot] != 0 && hashes[slot] != hash) {
+                slot = (slot + 1) & mask;
+            }
+            if (entries[slot] == 0) {
+                size++;
+            }
+            hashes[slot] = hash;
+            entries[slot] = entry;
+        }
+
+        private void grow() {
+            long[] oldHashes = hashes;
+            long[] oldEntries = entries;
+            hashes = new long[oldEntries.length * 2];
+            entries = new long[oldEntries.length * 2];
+            size = 0;
+            for (int i = 0; i < oldEntries.length; i++) {
+                if (oldEntries[i] != 0) {
+                    insert(oldHashes[i], oldEntries[i]);
+                }
+            }
+        }
+
+        long get(long hash) {
+            int mask = entries.length - 1;
+            for (int slot = (int) hash & mask; entries[slot] != 0; slot = (slot + 1) & mask) {
+                if (hashes[slot] == hash) {
+                    return entries[slot];
+                }
+            }
+            return 0;
+        }
+    }
+
+    private Object readIndexed(String path) throws StorageException {
+        indexLock.readLock().lock();
+        try {
+            if (index == null) {
+                return UNKNOWN;
+            }
+            byte[] bytes = path.getBytes(StandardCharsets.UTF_8);
+            long entry = index.get(hash(bytes, 0, bytes.length));
+            if (entry == 0) {
+                return path.indexOf('.') < 0 ? null : UNKNOWN;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) (entry & MAX_LINE_LENGTH));
+            long position = entry >>> LENGTH_BITS;
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    return UNKNOWN;
+                }
+            }
+            byte[] line = buffer.array();
+            int keyEnd = keyEnd(line, line.length);
+            if (keyEnd < 0 || !path.equals(key(line, keyEnd))) {
+                return UNKNOWN;
+            }
+            return value(line, valueStart(line, line.length, keyEnd), valueEnd(line, line.length));
+        } catch (IOException ex) {
+            throw new StorageException("could not read " + file.getName(), ex);
+        } finally {
+            indexLock.readLock().unlock();
+        }
+    }
+
+    private boolean forEachIndexed(BiConsumer<String, Object> consumer) throws StorageException {
+        indexLock.readLock().lock();
+        try {
+            if (index == null) {
+                return false;
+            }
+            return scan(file, (line, length, offset) -> {
+                if (!isIgnored(line, length)) {
+                    int keyEnd = keyEnd(line, length);
+                    // skip keys which are repeated later in the file
+                    if (index.get(keyHash(line, keyEnd)) == (offset << LENGTH_BITS | length)) {
+                        consumer.accept(key(line, keyEnd), value(line, valueStart(line, length, keyEnd), valueEnd(line, length)));
+                    }
+                }
+                return true;
+            });
+        } catch (IOException ex) {
+            throw new StorageException("could not read " + file.getName(), ex);
+        } finally {
+            indexLock.readLock().unlock();
+        }
+    }
+
+    private FileStorageProvider loadedProvider() {
+        return provider.isDone() && !provider.isCompletedExceptionally() ? provider.getNow(null) : null;
+    }
+
+    private FileStorageProvider awaitProvider() throws StorageException {
+        try {
+            return provider.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new StorageException("interrupted while loading " + file.getName(), ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof StorageException) {
+                throw (StorageException) ex.getCause();
+            }
+            throw new StorageException("could not load " + file.getName(), ex.getCause());
+        }
+    }
+
+    /**
+     * @return whether the whole file is loaded
+     */
+    public boolean isLoaded() {
+        return loadedProvider() != null;
+    }
+
+    @Override
+    public Object read(String path) throws StorageException {
+        Objects.requireNonNull(path);
+        checkClosed();
+        FileStorageProvider loaded = loadedProvider();
+        if (loaded == null) {
+            Object value = readIndexed(path);
+            if (value != UNKNOWN) {
+                return value;
+            }
+            loaded = awaitProvider();
+        }
+        return loaded.read(path);
+    }
+
+    @Override
+    public Map<String, ?> read(Set<String> paths) throws StorageException {
+        Objects.requireNonNull(paths);
+        checkClosed();
+        FileStorageProvider loaded = loadedProvider();
+        if (loaded == null) {
+            Map<String, Object> data = new HashMap<>();
+            for (String path : paths) {
+                Object value = readIndexed(path);
+                if (value == UNKNOWN) {
+                    return awaitProvider().read(paths);
+                }
+                if (value != null) {
+                    data.put(path, value);
+                }
+            }
+            return data;
+        }
+        return loaded.read(paths);
+    }
+
+    @Override
+    public void write(String path, Object data) throws StorageException {
+        Objects.requireNonNull(path);
+        checkClosed();
+        awaitProvider().write(path, data);
+    }
+
+    @Override
+    public void delete(String path) throws StorageException {
+        Objects.requireNonNull(path);
+        checkClosed();
+        awaitProvider().delete(path);
+    }
+
+    @Override
+    public Map<String, ?> readAll() throws StorageException {
+        checkClosed();
+        return awaitProvider().readAll();
+    }
+
+    @Override
+    public void forEach(BiConsumer<String, Object> consumer) throws StorageException {
+        Objects.requireNonNull(consumer);
+        checkClosed();
+        if (loadedProvider() != null || !forEachIndexed(consumer)) {
+            awaitProvider().forEach(consumer);
+        }
+    }
+
+    @Override
+    public void writeAll(Map<String, ?> data) throws StorageException {
+        Objects.requireNonNull(data);
+        checkClosed();
+        awaitProvider().writeAll(data);
+    }
+
+    @Override
+    public void close() throws StorageException {
+        if (closed.compareAndSet(false, true)) {
+            awaitProvider().close();
+        }
+    }
+
+    private void checkClosed() throws StorageException {
+        if (closed.get()) {
+            throw new StorageException("closed");
+        }
+    }
+}
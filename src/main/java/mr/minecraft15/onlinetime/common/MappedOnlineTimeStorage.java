@@ -0,0 +1,367 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Niklas Seyfarth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package mr.minecraft15.onlinetime.common;
+
+import mr.minecraft15.onlinetime.api.StorageException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Online time storage in a memory mapped file of fixed width slots. Each slot holds the two halves of the UUID and the
+ * online time in seconds, slots are found by open addressing with linear probing. Reads and updates work directly on
+ * the mapped file, so the online times do not occupy any heap.
+ * <p>
+ * The table grows by rehashing into a new file with the next generation number. The new file becomes valid only once
+ * it is completely written, so a crash while growing leaves the previous generation intact. The nil UUID can not be
+ * stored, as it marks empty slots.
+ */
+public class MappedOnlineTimeStorage implements BulkOnlineTimeStorage {
+
+    private static final Pattern FILE_NAME_PATTERN = Pattern.compile("onlinetime-(\\d+)\\.dat");
+
+    private static final int MAGIC = 0x4f544d54;
+    private static final int VERSION = 1;
+    private static final int SLOT_SIZE = 24;
+    private static final int HEADER_SIZE = SLOT_SIZE;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int MAX_CAPACITY = 1 << 26;
+
+    private final File directory;
+
+    private final ReadWriteLock rwLock;
+    private final AtomicBoolean closed;
+
+    private FileChannel channel;
+    private MappedByteBuffer table;
+    private File file;
+    private long generation;
+    private int capacity;
+    private int size;
+
+    public MappedOnlineTimeStorage(File directory) throws StorageException {
+        this.directory = Objects.requireNonNull(directory);
+
+        this.rwLock = new ReentrantReadWriteLock();
+        this.closed = new AtomicBoolean(false);
+
+        try {
+            Files.createDirectories(directory.toPath());
+            if (!openLatestGeneration()) {
+                createGeneration(0, INITIAL_CAPACITY, null);
+            }
+            deleteOldGenerations();
+        } catch (IOException ex) {
+            throw new StorageException("could not open online time table", ex);
+        }
+    }
+
+    private boolean openLatestGeneration() throws IOException {
+        List<Long> generations = new ArrayList<>();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File candidate : files) {
+                Matcher matcher = FILE_NAME_PATTERN.matcher(candidate.getName());
+                if (matcher.matches()) {
+                    generations.add(Long.parseLong(matcher.group(1)));
+                }
+            }
+        }
+        generations.sort(Comparator.reverseOrder());
+        for (long candidate : generations) {
+            File candidateFile = fileOf(candidate);
+            FileChannel candidateChannel = FileChannel.open(candidateFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long length = candidateChannel.size();
+            if (length >= HEADER_SIZE) {
+                MappedByteBuffer header = candidateChannel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+                int candidateCapacity = header.getInt(8);
+                if (header.getInt(0) == MAGIC && header.getInt(4) == VERSION
+                        && Integer.bitCount(candidateCapacity) == 1 && candidateCapacity <= MAX_CAPACITY
+                        && length == HEADER_SIZE + (long) candidateCapacity * SLOT_SIZE) {
+                    this.channel = candidateChannel;
+                    this.table = candidateChannel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+                    this.file = candidateFile;
+                    this.generation = candidate;
+                    this.capacity = candidateCapacity;
+                    this.size = table.getInt(12);
+                    return true;
+                }
+            }
+            // incomplete file of an interrupted resize
+            candidateChannel.close();
+        }
+        return false;
+    }
+
+    private File fileOf(long generation) {
+        return new File(directory, "onlinetime-" + generation + ".dat");
+    }
+
+    /**
+     * Create a table file with the given generation and capacity, copy all entries of the old table and make it the
+     * current table.
+     */
+    private void createGeneration(long newGeneration, int newCapacity, MappedByteBuffer oldTable) throws IOException {
+        File newFile = fileOf(newGeneration);
+        long length = HEADER_SIZE + (long) newCapacity * SLOT_SIZE;
+        FileChannel newChannel = FileChannel.open(newFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            MappedByteBuffer newTable = newChannel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+            int newSize = 0;
+            if (oldTable != null) {
+                for (int slot = 0; slot < capacity; slot++) {
+                    int offset = HEADER_SIZE + slot * SLOT_SIZE;
+                    long msb = oldTable.getLong(offset);
+                    long lsb = oldTable.getLong(offset + 8);
+                    if (msb != 0 || lsb != 0) {
+                        int newOffset = findSlot(newTable, newCapacity, msb, lsb);
+                        newTable.putLong(newOffset + 16, oldTable.getLong(offset + 16));
+                        newTable.putLong(newOffset + 8, lsb);
+                        newTable.putLong(newOffset, msb);
+                        newSize++;
+                    }
+                }
+            }
+            newTable.putInt(8, newCapacity);
+            newTable.putInt(12, newSize);
+            newTable.force();
+            // the file is valid from here on
+            newTable.putInt(4, VERSION);
+            newTable.putInt(0, MAGIC);
+            newTable.force();
+            FileUtil.syncDirectory(directory.toPath());
+
+            FileChannel oldChannel = this.channel;
+            this.channel = newChannel;
+            this.table = newTable;
+            this.file = newFile;
+            this.generation = newGeneration;
+            this.capacity = newCapacity;
+            this.size = newSize;
+            if (oldChannel != null) {
+                oldChannel.close();
+            }
+        } catch (IOException | RuntimeException ex) {
+            newChannel.close();
+            Files.deleteIfExists(newFile.toPath());
+            throw ex;
+        }
+    }
+
+    private void deleteOldGenerations() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File candidate : files) {
+            Matcher matcher = FILE_NAME_PATTERN.matcher(candidate.getName());
+            if (matcher.matches() && Long.parseLong(matcher.group(1)) != generation) {
+                // may fail while the old file is still mapped, it is deleted on a later start then
+                candidate.delete();
+            }
+        }
+    }
+
+    /**
+     * Find the slot of the UUID or the empty slot where it has to be inserted.
+     *
+     * @return offset of the slot in the table
+     */
+    private static int findSlot(MappedByteBuffer table, int capacity, long msb, long lsb) {
+        int mask = capacity - 1;
+        int slot = hash(msb, lsb) & mask;
+        while (true) {
+            int offset = HEADER_SIZE + slot * SLOT_SIZE;
+            long slotMsb = table.getLong(offset);
+            long slotLsb = table.getLong(offset + 8);
+            if ((slotMsb == msb && slotLsb == lsb) || (slotMsb == 0 && slotLsb == 0)) {
+                return offset;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private static int hash(long msb, long lsb) {
+        long hash = (msb ^ lsb) * 0x9e3779b97f4a7c15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    private static void checkUuid(UUID uuid) throws StorageException {
+        Objects.requireNonNull(uuid);
+        if (uuid.getMostSignificantBits() == 0 && uuid.getLeastSignificantBits() == 0) {
+            throw new StorageException("nil uuid can not be stored");
+        }
+    }
+
+    @Override
+    public OptionalLong getOnlineTime(UUID uuid) throws StorageException {
+        checkUuid(uuid);
+        checkClosed();
+        rwLock.readLock().lock();
+        try {
+            checkClosed();
+            int offset = findSlot(table, capacity, uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+            if (table.getLong(offset) == 0 && table.getLong(offset + 8) == 0) {
+                return OptionalLong.empty();
+            }
+            return OptionalLong.of(table.getLong(offset + 16));
+        } finally {
+            rwLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void addOnlineTime(UUID uuid, long additionalOnlineTime) throws StorageException {
+        checkUuid(uuid);
+        addOnlineTimes(Collections.singletonMap(uuid, additionalOnlineTime));
+    }
+
+    @Override
+    public void addOnlineTimes(Map<UUID, Long> additionalOnlineTimes) throws StorageException {
+        Objects.requireNonNull(additionalOnlineTimes);
+        write(additionalOnlineTimes, true);
+    }
+
+    @Override
+    public void setOnlineTimes(Map<UUID, Long> onlineTimes) throws StorageException {
+        Objects.requireNonNull(onlineTimes);
+        write(onlineTimes, false);
+    }
+
+    private void write(Map<UUID, Long> onlineTimes, boolean add) throws StorageException {
+        for (UUID uuid : onlineTimes.keySet()) {
+            checkUuid(uuid);
+        }
+        checkClosed();
+        rwLock.writeLock().lock();
+        try {
+            checkClosed();
+            for (Map.Entry<UUID, Long> entry : onlineTimes.entrySet()) {
+                long msb = entry.getKey().getMostSignificantBits();
+                long lsb = entry.getKey().getLeastSignificantBits();
+                int offset = findSlot(table, capacity, msb, lsb);
+                if (table.getLong(offset) == 0 && table.getLong(offset + 8) == 0) {
+                    if (growIfFull()) {
+                        offset = findSlot(table, capacity, msb, lsb);
+                    }
+                    table.putLong(offset + 16, entry.getValue());
+                    table.putLong(offset + 8, lsb);
+                    table.putLong(offset, msb);
+                    table.putInt(12, ++size);
+                } else {
+                    table.putLong(offset + 16, add ? table.getLong(offset + 16) + entry.getValue() : entry.getValue());
+                }
+            }
+            table.force();
+        } catch (IOException ex) {
+            throw new StorageException("could not grow online time table", ex);
+        } finally {
+            rwLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void forEachOnlineTime(BiConsumer<UUID, Long> consumer) throws StorageException {
+        Objects.requireNonNull(consumer);
+        checkClosed();
+        Map<UUID, Long> sortedOnlineTimes = new TreeMap<>(UuidUtil.BYTE_ORDER);
+        rwLock.readLock().lock();
+        try {
+            checkClosed();
+            for (int slot = 0; slot < capacity; slot++) {
+                int offset = HEADER_SIZE + slot * SLOT_SIZE;
+                long msb = table.getLong(offset);
+                long lsb = table.getLong(offset + 8);
+                if (msb != 0 || lsb != 0) {
+                    sortedOnlineTimes.put(new UUID(msb, lsb), table.getLong(offset + 16));
+                }
+            }
+        } finally {
+            rwLock.readLock().unlock();
+        }
+        sortedOnlineTimes.forEach(consumer);
+    }
+
+    private boolean growIfFull() throws IOException, StorageException {
+        // keep the load factor at or below 3/4
+        if ((long) (size + 1) * 4 <= (long) capacity * 3) {
+            return false;
+        }
+        if (capacity >= MAX_CAPACITY) {
+            throw new StorageException("online time table is full");
+        }
+        File oldFile = file;
+        createGeneration(generation + 1, capacity << 1, table);
+        // the old mapping is released by the garbage collector, deletion may fail until then
+        oldFile.delete();
+        return true;
+    }
+
+    public int size() throws StorageException {
+        checkClosed();
+        rwLock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            rwLock.readLock().unlock();
+        }
+    }
+
+    private void checkClosed() throws StorageException {
+        if (closed.get()) {
+            throw new StorageException("closed");
+        }
+    }
+
+    @Override
+    public void close() throws StorageException {
+        if (closed.get()) {
+            return;
+        }
+        rwLock.writeLock().lock();
+        try {
+            if (closed.compareAndSet(false, true)) {
+                table.force();
+                channel.close();
+            }
+        } catch (IOException ex) {
+            throw new StorageException("could not close online time table", ex);
+        } finally {
+            rwLock.writeLock().unlock();
+        }
+    }
+}
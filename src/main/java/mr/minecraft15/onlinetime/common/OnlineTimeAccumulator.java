@@ -30,8 +30,22 @@ import java.util.UUID;
 
 public interface OnlineTimeAccumulator extends AutoCloseable {
 
+    /**
+     * Start measuring the online time of a player.
+     *
+     * @param uuid player that joined
+     * @param when time of joining in milliseconds, taken from the accumulator's {@link mr.minecraft15.onlinetime.api.MonotonicClock}
+     * @throws StorageException wrapping exceptions of the underlying storage implementation
+     */
     void startAccumulating(UUID uuid, long when) throws StorageException;
 
+    /**
+     * Stop measuring the online time of a player and save it.
+     *
+     * @param uuid player that left
+     * @param when time of leaving in milliseconds, taken from the accumulator's {@link mr.minecraft15.onlinetime.api.MonotonicClock}
+     * @throws StorageException wrapping exceptions of the underlying storage implementation
+     */
     void stopAccumulatingAndSaveOnlineTime(UUID uuid, long when) throws StorageException;
 
     void flushOnlineTimeCache() throws StorageException;
@@ -26,24 +26,39 @@ package mr.minecraft15.onlinetime.common;
 
 import mr.minecraft15.onlinetime.api.*;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
 import java.util.Optional;
 import java.util.OptionalLong;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
+import java.util.stream.Collectors;
 
 public class OnlineTimeAdminCommand implements PluginCommand {
 
+    private static final int MAX_COMPLETIONS = 50;
+    private static final List<String> SUB_COMMANDS = Arrays.asList("set", "modify", "reset", "migrate");
+    private static final long MIGRATION_PROGRESS_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+
     private final PluginProxy plugin;
     private final Localization localization;
     private final TimeParser parser;
     private final OnlineTimeStorage timeStorage;
+    private final StorageMigration.BackendOpener migrationBackends;
+    private final AtomicBoolean migrationRunning;
 
-    public OnlineTimeAdminCommand(PluginProxy plugin, Localization localization, TimeParser parser, OnlineTimeStorage timeStorage) {
+    public OnlineTimeAdminCommand(PluginProxy plugin, Localization localization, TimeParser parser, OnlineTimeStorage timeStorage,
+                                  StorageMigration.BackendOpener migrationBackends) {
         this.plugin = plugin;
         this.localization = localization;
         this.parser = parser;
         this.timeStorage = timeStorage;
+        this.migrationBackends = migrationBackends;
+        this.migrationRunning = new AtomicBoolean(false);
     }
 
     @Override
@@ -74,6 +89,9 @@ public class OnlineTimeAdminCommand implements PluginCommand {
                 case "del":
                     reset(sender, subCommandArgs);
                     break;
+                case "migrate":
+                    migrate(sender, subCommandArgs);
+                    break;
                 default:
                     printUtilityMessage(sender, "message.command.onlinetimeadmin.usage");
                     break;
@@ -81,6 +99,25 @@ public class OnlineTimeAdminCommand implements PluginCommand {
         });
     }
 
+    @Override
+    public List<String> tabComplete(PluginCommandSender sender, String... args) {
+        if (!sender.hasPermission("onlinetime.admin")) {
+            return Collections.emptyList();
+        }
+        if (args.length == 1) {
+            String prefix = args[0].toLowerCase(Locale.ROOT);
+            return SUB_COMMANDS.stream().filter(subCommand -> subCommand.startsWith(prefix)).collect(Collectors.toList());
+        } else if ("migrate".equalsIgnoreCase(args[0])) {
+            if (args.length <= 3) {
+                String prefix = args[args.length - 1].toLowerCase(Locale.ROOT);
+                return StorageMigration.STORAGE_NAMES.stream().filter(storage -> storage.startsWith(prefix)).collect(Collectors.toList());
+            }
+        } else if (args.length == 2) {
+            return plugin.findPlayerNames(args[1], MAX_COMPLETIONS);
+        }
+        return Collections.emptyList();
+    }
+
     private void set(PluginCommandSender sender, String... args) {
         if (args.length < 2) {
             printUtilityMessage(sender, "message.command.onlinetimeadmin.set.usage");
@@ -215,6 +252,64 @@ public class OnlineTimeAdminCommand implements PluginCommand {
                 .replace("player", player.getRepresentation())));
     }
 
+    private void migrate(PluginCommandSender sender, String... args) {
+        if (args.length < 2 || args.length > 3) {
+            printUtilityMessage(sender, "message.command.onlinetimeadmin.migrate.usage");
+            return;
+        }
+        for (String storage : Arrays.asList(args[0], args[1])) {
+            if (!StorageMigration.canonicalName(storage).isPresent()) {
+                sender.sendMessage(plugin.getFormattedMessage(localization.getMessage("message.command.onlinetimeadmin.migrate.unknownstorage")
+                        .replace("storage", storage)));
+                return;
+            }
+        }
+        String from = StorageMigration.canonicalName(args[0]).get();
+        String to = StorageMigration.canonicalName(args[1]).get();
+        int batchSize = StorageMigration.DEFAULT_BATCH_SIZE;
+        if (args.length == 3) {
+            try {
+                batchSize = Integer.parseInt(args[2]);
+            } catch (NumberFormatException ex) {
+                batchSize = 0;
+            }
+        }
+        if (from.equals(to) || batchSize < 1) {
+            printUtilityMessage(sender, "message.command.onlinetimeadmin.migrate.usage");
+            return;
+        }
+        if (!migrationRunning.compareAndSet(false, true)) {
+            printUtilityMessage(sender, "message.command.onlinetimeadmin.migrate.running");
+            return;
+        }
+        try {
+            StorageMigration migration = new StorageMigration(from, to, batchSize, plugin.getDataFolder());
+            sender.sendMessage(plugin.getFormattedMessage(localization.getMessage(migration.isResumed()
+                    ? "message.command.onlinetimeadmin.migrate.resumed" : "message.command.onlinetimeadmin.migrate.started")
+                    .replace("from", from)
+                    .replace("to", to)));
+            long[] lastReport = {System.nanoTime()};
+            long copied = migration.run(migrationBackends, (names, count) -> {
+                long now = System.nanoTime();
+                if (now - lastReport[0] >= MIGRATION_PROGRESS_INTERVAL) {
+                    lastReport[0] = now;
+                    sender.sendMessage(plugin.getFormattedMessage(localization.getMessage(names
+                            ? "message.command.onlinetimeadmin.migrate.progress.names" : "message.command.onlinetimeadmin.migrate.progress.times")
+                            .replace("count", Long.toString(count))));
+                }
+            });
+            sender.sendMessage(plugin.getFormattedMessage(localization.getMessage("message.command.onlinetimeadmin.migrate.success")
+                    .replace("count", Long.toString(copied))
+                    .replace("from", from)
+                    .replace("to", to)));
+        } catch (StorageException ex) {
+            plugin.getLogger().log(Level.SEVERE, "could not migrate storage from " + from + " to " + to, ex);
+            printUtilityMessage(sender, "message.command.onlinetimeadmin.migrate.failed");
+        } finally {
+            migrationRunning.set(false);
+        }
+    }
+
     public boolean modifyOnlineTime(UUID uuid, final long modifyBy) {
         try {
             timeStorage.addOnlineTime(uuid, modifyBy);
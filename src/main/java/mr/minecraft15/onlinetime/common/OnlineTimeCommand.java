@@ -26,21 +26,26 @@ package mr.minecraft15.onlinetime.common;
 
 import mr.minecraft15.onlinetime.api.*;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Level;
 
 public class OnlineTimeCommand implements PluginCommand {
 
+    private static final int MAX_COMPLETIONS = 50;
+
     private final PluginProxy plugin;
     private final Localization localization;
-    private final OnlineTimeStorage timeStorage;
+    private final AsyncStorage storage;
 
-    public OnlineTimeCommand(PluginProxy plugin, Localization localization, OnlineTimeStorage timeStorage) {
+    public OnlineTimeCommand(PluginProxy plugin, Localization localization, AsyncStorage storage) {
         this.plugin = plugin;
         this.localization = localization;
-        this.timeStorage = timeStorage;
+        this.storage = storage;
     }
 
     @Override
@@ -49,58 +54,54 @@ public class OnlineTimeCommand implements PluginCommand {
             printUtilityMessage(sender, "message.nopermission");
             return;
         }
-        if (args.length <= 1) {
-            plugin.getScheduler().runAsyncOnce(() -> {
-                final PlayerData player;
-                final Optional<PlayerData> senderPlayer = sender.asPlayer();
-                if (args.length == 1) {
-                    Optional<PlayerData> optionalPlayer = plugin.findPlayer(args[0]);
-                    if (optionalPlayer.isPresent()) {
-                        player = optionalPlayer.get();
-                    } else {
-                        sender.sendMessage(plugin.getFormattedMessage(localization.getMessage("message.command.onlinetime.notfound")
-                                .replace("player", args[0])));
-                        return;
-                    }
-                } else {
-                    if (senderPlayer.isPresent()){
-                        player = senderPlayer.get();
-                    } else {
-                        printUtilityMessage(sender, "message.command.onlinetime.usage");
-                        return;
-                    }
-                }
-                boolean isTargetSender = senderPlayer.isPresent() && Objects.equals(senderPlayer.get(), player);
-                if (!isTargetSender && !sender.hasPermission("onlinetime.see.other")) {
-                    printUtilityMessage(sender, "message.nopermission");
-                    return;
-                }
-                final long time;
-                try {
-                    OptionalLong optionalTime = timeStorage.getOnlineTime(player.getUuid());
-                    if (optionalTime.isPresent()) {
-                        time = optionalTime.getAsLong();
-                    } else {
-                        sender.sendMessage(plugin.getFormattedMessage(localization.getMessage("message.command.onlinetime.notfound")
-                                .replace("player", player.getRepresentation())));
-                        return;
-                    }
-                } catch (StorageException ex) {
-                    plugin.getLogger().log(Level.WARNING, "could not load online time", ex);
-                    printUtilityMessage(sender, "message.error");
-                    return;
-                }
-                if (isTargetSender) {
-                    sender.sendMessage(plugin.getFormattedMessage(localization.getMessage("message.command.onlinetime.timeseen.self")
-                        .replace("time", TimeUtil.formatTime(time, localization))));
-                } else {
-                    sender.sendMessage(plugin.getFormattedMessage(localization.getMessage("message.command.onlinetime.timeseen.other")
-                        .replace("player", player.getRepresentation(), "time", TimeUtil.formatTime(time, localization))));
-                }
-            });
-        } else {
+        final Optional<PlayerData> senderPlayer = sender.asPlayer();
+        if (args.length > 1 || (args.length == 0 && !senderPlayer.isPresent())) {
             printUtilityMessage(sender, "message.command.onlinetime.usage");
+            return;
+        }
+        CompletableFuture<Optional<PlayerData>> target = args.length == 1
+                ? storage.supply(() -> plugin.findPlayer(args[0]))
+                : CompletableFuture.completedFuture(senderPlayer);
+        target.thenCompose(optionalPlayer -> {
+            if (!optionalPlayer.isPresent()) {
+                sender.sendMessage(plugin.getFormattedMessage(localization.getMessage("message.command.onlinetime.notfound")
+                        .replace("player", args[0])));
+                return CompletableFuture.completedFuture(null);
+            }
+            PlayerData player = optionalPlayer.get();
+            boolean isTargetSender = senderPlayer.isPresent() && Objects.equals(senderPlayer.get(), player);
+            if (!isTargetSender && !sender.hasPermission("onlinetime.see.other")) {
+                printUtilityMessage(sender, "message.nopermission");
+                return CompletableFuture.completedFuture(null);
+            }
+            return storage.getOnlineTime(player.getUuid())
+                    .thenAccept(optionalTime -> printOnlineTime(sender, player, isTargetSender, optionalTime));
+        }).exceptionally(ex -> {
+            plugin.getLogger().log(Level.WARNING, "could not load online time", AsyncStorage.unwrap(ex));
+            printUtilityMessage(sender, "message.error");
+            return null;
+        });
+    }
+
+    private void printOnlineTime(PluginCommandSender sender, PlayerData player, boolean isTargetSender, OptionalLong optionalTime) {
+        if (!optionalTime.isPresent()) {
+            sender.sendMessage(plugin.getFormattedMessage(localization.getMessage("message.command.onlinetime.notfound")
+                    .replace("player", player.getRepresentation())));
+        } else if (isTargetSender) {
+            sender.sendMessage(plugin.getFormattedMessage(localization.getMessage("message.command.onlinetime.timeseen.self")
+                .replace("time", TimeUtil.formatTime(optionalTime.getAsLong(), localization))));
+        } else {
+            sender.sendMessage(plugin.getFormattedMessage(localization.getMessage("message.command.onlinetime.timeseen.other")
+                .replace("player", player.getRepresentation(), "time", TimeUtil.formatTime(optionalTime.getAsLong(), localization))));
+        }
+    }
+
+    @Override
+    public List<String> tabComplete(PluginCommandSender sender, String... args) {
+        if (args.length == 1 && sender.hasPermission("onlinetime.see.other")) {
+            return plugin.findPlayerNames(args[0], MAX_COMPLETIONS);
         }
+        return Collections.emptyList();
     }
 
     private void printUtilityMessage(PluginCommandSender sender, String messageKey) {
@@ -24,31 +24,80 @@
 
 package mr.minecraft15.onlinetime.common;
 
-import mr.minecraft15.onlinetime.api.OnlineTimeStorage;
-import mr.minecraft15.onlinetime.api.StorageException;
+import mr.minecraft15.onlinetime.api.*;
 
-import java.util.Map;
-import java.util.Objects;
-import java.util.OptionalLong;
-import java.util.UUID;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
 
+/**
+ * Write-behind cache in front of a slow online time storage. Reads are answered from memory after the first lookup,
+ * additions are coalesced per player and written to the underlying storage in one batch by {@link #flush()}.
+ * Read values may be evicted at any time, they are reloaded from storage plus pending additions. Concurrent lookups of
+ * a player that is not cached share one lookup of the storage.
+ */
 public class OnlineTimeStorageCache implements OnlineTimeStorage {
 
     private final OnlineTimeStorage storage;
-    private final ConcurrentMap<UUID, Long> cache;
-    
-    
+    private final BoundedExpiringCache<UUID, Long> cache;
+    private final ConcurrentMap<UUID, Long> pending;
+    private final ReadWriteLock flushLock;
+    private final AtomicBoolean closed;
+
+    private volatile PluginTask flushTask;
+
     public OnlineTimeStorageCache(OnlineTimeStorage storage) {
+        this(storage, new BoundedExpiringCache<>(0, 0, 0, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Create a write-behind cache that keeps read online times in the given cache. Pending additions are never evicted.
+     *
+     * @param storage storage to cache
+     * @param cache cache for read online times
+     */
+    public OnlineTimeStorageCache(OnlineTimeStorage storage, BoundedExpiringCache<UUID, Long> cache) {
         this.storage = Objects.requireNonNull(storage);
-        this.cache = new ConcurrentHashMap<>();
+        this.cache = Objects.requireNonNull(cache);
+        this.pending = new ConcurrentHashMap<>();
+        this.flushLock = new ReentrantReadWriteLock();
+        this.closed = new AtomicBoolean(false);
+    }
+
+    /**
+     * Periodically write pending additions to the underlying storage.
+     *
+     * @param plugin plugin providing scheduler and logger
+     * @param interval seconds between two flushes
+     */
+    public void startFlushing(PluginProxy plugin, long interval) {
+        Objects.requireNonNull(plugin);
+        PluginTask previous = flushTask;
+        if (previous != null) {
+            previous.cancel();
+        }
+        flushTask = plugin.getScheduler().scheduleAsync(interval, interval, () -> {
+            try {
+                flush();
+            } catch (StorageException ex) {
+                plugin.getLogger().log(Level.SEVERE, "could not flush online time storage cache", ex);
+            }
+            cache.cleanUp();
+        });
     }
 
     @Override
     public OptionalLong getOnlineTime(UUID uuid) throws StorageException {
+        Objects.requireNonNull(uuid);
+        checkClosed();
         try {
-            Long  onlineTime = cache.computeIfAbsent(uuid, this::getOnlineTimeUncached);
+            Long onlineTime = cache.get(uuid, this::getOnlineTimeUncached);
             if (null != onlineTime) {
                 return OptionalLong.of(onlineTime);
             } else {
@@ -60,30 +109,161 @@ public class OnlineTimeStorageCache implements OnlineTimeStorage {
     }
 
     private Long getOnlineTimeUncached(UUID uuid) {
+        // a running flush has already drained pending but maybe not yet written the storage, wait for it
+        flushLock.readLock().lock();
         try {
             OptionalLong onlineTime = storage.getOnlineTime(uuid);
+            Long pendingTime = pending.get(uuid);
             if (onlineTime.isPresent()) {
-                return onlineTime.getAsLong();
+                return onlineTime.getAsLong() + (null != pendingTime ? pendingTime : 0);
             } else {
-                return null;
+                return pendingTime;
             }
         } catch (StorageException ex) {
             throw new UncheckedStorageException(ex);
+        } finally {
+            flushLock.readLock().unlock();
         }
     }
 
     @Override
     public void addOnlineTime(UUID uuid, long additionalOnlineTime) throws StorageException {
-
+        Objects.requireNonNull(uuid);
+        checkClosed();
+        addPending(uuid, additionalOnlineTime);
     }
 
     @Override
     public void addOnlineTimes(Map<UUID, Long> additionalOnlineTimes) throws StorageException {
+        if (additionalOnlineTimes == null) {
+            return;
+        }
+        checkClosed();
+        for (Map.Entry<UUID, Long> entry : additionalOnlineTimes.entrySet()) {
+            addPending(entry.getKey(), entry.getValue());
+        }
+    }
 
+    private void addPending(UUID uuid, long additionalOnlineTime) {
+        // computing on the cache entry serializes with a concurrent load of the same player
+        cache.compute(uuid, (key, cachedTime) -> {
+            pending.merge(key, additionalOnlineTime, Long::sum);
+            return null != cachedTime ? cachedTime + additionalOnlineTime : null;
+        });
+    }
+
+    /**
+     * Write all pending additions to the underlying storage. Additions that could not be written are kept for the next flush.
+     *
+     * @throws StorageException if the underlying storage could not be written
+     */
+    public void flush() throws StorageException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        flushLock.writeLock().lock();
+        try {
+            Map<UUID, Long> additionalOnlineTimes = new HashMap<>();
+            for (UUID uuid : pending.keySet()) {
+                Long additionalOnlineTime = pending.remove(uuid);
+                if (null != additionalOnlineTime) {
+                    additionalOnlineTimes.put(uuid, additionalOnlineTime);
+                }
+            }
+            try {
+                storage.addOnlineTimes(additionalOnlineTimes);
+            } catch (PartialWriteException ex) {
+                // the written part must not be added a second time
+                additionalOnlineTimes.forEach((uuid, additionalOnlineTime) -> {
+                    if (ex.getUnwritten().contains(uuid)) {
+                        pending.merge(uuid, additionalOnlineTime, Long::sum);
+                    }
+                });
+                throw ex;
+            } catch (StorageException | RuntimeException ex) {
+                additionalOnlineTimes.forEach((uuid, additionalOnlineTime) -> pending.merge(uuid, additionalOnlineTime, Long::sum));
+                throw ex;
+            }
+        } finally {
+            flushLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Get a view of the bulk storage behind this cache for moving all data in or out of it. Pending additions are
+     * written before its content is read and replaced online times are dropped from the cache, so reads through the
+     * cache see them right away. Closing the view does nothing.
+     *
+     * @param bulkStorage the storage this cache was created for
+     * @return bulk access that keeps this cache up to date
+     */
+    public BulkOnlineTimeStorage bulkView(BulkOnlineTimeStorage bulkStorage) {
+        if (bulkStorage != storage) {
+            throw new IllegalArgumentException("not the cached storage");
+        }
+        return new BulkOnlineTimeStorage() {
+            @Override
+            public void forEachOnlineTime(BiConsumer<UUID, Long> consumer) throws StorageException {
+                checkClosed();
+                flush();
+                bulkStorage.forEachOnlineTime(consumer);
+            }
+
+            @Override
+            public void setOnlineTimes(Map<UUID, Long> onlineTimes) throws StorageException {
+                checkClosed();
+                try {
+                    bulkStorage.setOnlineTimes(onlineTimes);
+                } finally {
+                    onlineTimes.keySet().forEach(cache::invalidate);
+                }
+            }
+
+            @Override
+            public OptionalLong getOnlineTime(UUID uuid) throws StorageException {
+                return OnlineTimeStorageCache.this.getOnlineTime(uuid);
+            }
+
+            @Override
+            public void addOnlineTime(UUID uuid, long additionalOnlineTime) throws StorageException {
+                OnlineTimeStorageCache.this.addOnlineTime(uuid, additionalOnlineTime);
+            }
+
+            @Override
+            public void addOnlineTimes(Map<UUID, Long> additionalOnlineTimes) throws StorageException {
+                OnlineTimeStorageCache.this.addOnlineTimes(additionalOnlineTimes);
+            }
+
+            @Override
+            public void close() {
+                // closed together with the cache
+            }
+        };
+    }
+
+    private void checkClosed() throws StorageException {
+        if (closed.get()) {
+            throw new StorageException("closed");
+        }
+    }
+
+    public BoundedExpiringCache<UUID, Long> getCache() {
+        return cache;
     }
 
     @Override
     public void close() throws StorageException {
-        storage.close();
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            PluginTask task = flushTask;
+            if (task != null) {
+                task.cancel();
+            }
+            flush();
+        } finally {
+            storage.close();
+        }
     }
 }
@@ -0,0 +1,214 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Niklas Seyfarth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package mr.minecraft15.onlinetime.common;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory index of player names in both directions. Names are compared case insensitively and kept sorted, so names
+ * starting with a prefix can be listed without scanning all names.
+ * <p>
+ * A name belongs to at most one player. All names set for a player are kept, but only the latest one is returned by
+ * {@link #getName(UUID)}.
+ */
+public class PlayerNameIndex {
+
+    private final NavigableMap<String, Entry> entriesByName;
+    private final Map<UUID, List<String>> namesByUuid;
+
+    private final ReadWriteLock rwLock;
+
+    public PlayerNameIndex() {
+        this.entriesByName = new TreeMap<>();
+        this.namesByUuid = new HashMap<>();
+        this.rwLock = new ReentrantReadWriteLock();
+    }
+
+    public Optional<UUID> getUuid(String name) {
+        Objects.requireNonNull(name);
+        rwLock.readLock().lock();
+        try {
+            Entry entry = entriesByName.get(toKey(name));
+            return entry == null ? Optional.empty() : Optional.of(entry.uuid);
+        } finally {
+            rwLock.readLock().unlock();
+        }
+    }
+
+    public Optional<String> getName(UUID uuid) {
+        Objects.requireNonNull(uuid);
+        rwLock.readLock().lock();
+        try {
+            List<String> names = namesByUuid.get(uuid);
+            return names == null ? Optional.empty() : Optional.of(names.get(names.size() - 1));
+        } finally {
+            rwLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get a name with the spelling it was put with.
+     *
+     * @param name the name, case is ignored
+     * @return the indexed spelling of the name
+     */
+    public Optional<String> getSpelling(String name) {
+        Objects.requireNonNull(name);
+        rwLock.readLock().lock();
+        try {
+            Entry entry = entriesByName.get(toKey(name));
+            return entry == null ? Optional.empty() : Optional.of(entry.name);
+        } finally {
+            rwLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * List names starting with the given prefix, ignoring case.
+     *
+     * @param prefix start of the names
+     * @param limit maximum number of names to return
+     * @return the first matching names in alphabetical order
+     */
+    public List<String> findNames(String prefix, int limit) {
+        Objects.requireNonNull(prefix);
+        String keyPrefix = toKey(prefix);
+        List<String> result = new ArrayList<>(Math.min(limit, 16));
+        rwLock.readLock().lock();
+        try {
+            for (Map.Entry<String, Entry> entry : entriesByName.tailMap(keyPrefix, true).entrySet()) {
+                if (result.size() >= limit || !entry.getKey().startsWith(keyPrefix)) {
+                    break;
+                }
+                result.add(entry.getValue().name);
+            }
+        } finally {
+            rwLock.readLock().unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Get the latest name of every player.
+     *
+     * @return copy of all players' latest names
+     */
+    public Map<UUID, String> getLatestNames() {
+        rwLock.readLock().lock();
+        try {
+            Map<UUID, String> latestNames = new HashMap<>(namesByUuid.size() * 4 / 3 + 1);
+            for (Map.Entry<UUID, List<String>> entry : namesByUuid.entrySet()) {
+                latestNames.put(entry.getKey(), entry.getValue().get(entry.getValue().size() - 1));
+            }
+            return latestNames;
+        } finally {
+            rwLock.readLock().unlock();
+        }
+    }
+
+    public void put(UUID uuid, String name) {
+        Objects.requireNonNull(uuid);
+        Objects.requireNonNull(name);
+        rwLock.writeLock().lock();
+        try {
+            internalPut(uuid, name);
+        } finally {
+            rwLock.writeLock().unlock();
+        }
+    }
+
+    public void putAll(Map<UUID, String> entries) {
+        Objects.requireNonNull(entries);
+        rwLock.writeLock().lock();
+        try {
+            for (Map.Entry<UUID, String> entry : entries.entrySet()) {
+                internalPut(entry.getKey(), entry.getValue());
+            }
+        } finally {
+            rwLock.writeLock().unlock();
+        }
+    }
+
+    private void internalPut(UUID uuid, String name) {
+        Entry previous = entriesByName.put(toKey(name), new Entry(name, uuid));
+        if (previous != null) {
+            internalRemove(previous);
+        }
+        // most players have very few names, the latest one is last
+        namesByUuid.computeIfAbsent(uuid, key -> new ArrayList<>(1)).add(name);
+    }
+
+    /**
+     * Remove a name from the player it belongs to.
+     *
+     * @param name the name, case is ignored
+     */
+    public void remove(String name) {
+        Objects.requireNonNull(name);
+        rwLock.writeLock().lock();
+        try {
+            Entry previous = entriesByName.remove(toKey(name));
+            if (previous != null) {
+                internalRemove(previous);
+            }
+        } finally {
+            rwLock.writeLock().unlock();
+        }
+    }
+
+    private void internalRemove(Entry entry) {
+        List<String> names = namesByUuid.get(entry.uuid);
+        names.remove(entry.name);
+        if (names.isEmpty()) {
+            namesByUuid.remove(entry.uuid);
+        }
+    }
+
+    public int size() {
+        rwLock.readLock().lock();
+        try {
+            return entriesByName.size();
+        } finally {
+            rwLock.readLock().unlock();
+        }
+    }
+
+    private static String toKey(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    private static final class Entry {
+
+        private final String name;
+        private final UUID uuid;
+
+        private Entry(String name, UUID uuid) {
+            this.name = name;
+            this.uuid = uuid;
+        }
+    }
+}
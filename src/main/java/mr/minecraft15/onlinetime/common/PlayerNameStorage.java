@@ -26,9 +26,12 @@ package mr.minecraft15.onlinetime.common;
 
 import mr.minecraft15.onlinetime.api.StorageException;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.BiConsumer;
 
 public interface PlayerNameStorage extends AutoCloseable {
 
@@ -37,7 +40,7 @@ public interface PlayerNameStorage extends AutoCloseable {
      * <br/>
      * Be aware, that multiple names may be associated with one uuid. Please refer to the implementing class' documentation.
      *
-     * @param playerName name to search for (exact match)
+     * @param playerName name to search for (exact match, some implementations ignore case)
      * @return the player's UUID
      * @throws StorageException wrapping exceptions of the underlying storage implementation
      */
@@ -75,6 +78,30 @@ public interface PlayerNameStorage extends AutoCloseable {
      */
     void setEntries(Map<UUID, String> entries) throws StorageException;
 
+    /**
+     * Find names starting with the given prefix, ignoring case. This is used for tab completion and must only look at
+     * names already in memory; implementations without an in-memory index return no names.
+     *
+     * @param prefix start of the names
+     * @param limit maximum number of names to return
+     * @return the first matching names in alphabetical order
+     * @throws StorageException wrapping exceptions of the underlying storage implementation
+     */
+    default List<String> findNames(String prefix, int limit) throws StorageException {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Pass the current name of every stored player to the consumer, ordered by {@link UuidUtil#BYTE_ORDER}.
+     *
+     * @param consumer receives uuid and name of every player
+     * @throws StorageException if the implementation can not list its entries or wrapping exceptions of the underlying
+     * storage implementation
+     */
+    default void forEachEntry(BiConsumer<UUID, String> consumer) throws StorageException {
+        throw new StorageException(getClass().getSimpleName() + " can not list its entries");
+    }
+
     @Override
     void close() throws StorageException;
 }
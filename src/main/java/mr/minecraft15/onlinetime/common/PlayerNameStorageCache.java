@@ -0,0 +1,209 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Niklas Seyfarth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package mr.minecraft15.onlinetime.common;
+
+import mr.minecraft15.onlinetime.api.StorageException;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Read cache for a player name storage that compares names case insensitively, like the database storage does.
+ * Writes go straight through to the underlying storage and update the cached associations.
+ * <p>
+ * If the storage itself has no in-memory index, names are found by prefix among the cached names.
+ */
+public class PlayerNameStorageCache implements PlayerNameStorage {
+
+    private final PlayerNameStorage storage;
+    private final BoundedExpiringCache<UUID, String> names;
+    private final BoundedExpiringCache<String, UUID> uuids;
+    private final Lock writeLock;
+    private final AtomicInteger activeWrites;
+    private final AtomicLong writeCount;
+
+    public PlayerNameStorageCache(PlayerNameStorage storage, BoundedExpiringCache<UUID, String> names, BoundedExpiringCache<String, UUID> uuids) {
+        this.storage = Objects.requireNonNull(storage);
+        this.names = Objects.requireNonNull(names);
+        this.uuids = Objects.requireNonNull(uuids);
+        this.writeLock = new ReentrantLock();
+        this.activeWrites = new AtomicInteger();
+        this.writeCount = new AtomicLong();
+    }
+
+    @Override
+    public Optional<UUID> getUuid(String playerName) throws StorageException {
+        Objects.requireNonNull(playerName);
+        return Optional.ofNullable(load(uuids, toKey(playerName), () -> storage.getUuid(playerName).orElse(null)));
+    }
+
+    @Override
+    public Optional<String> getName(UUID uuid) throws StorageException {
+        Objects.requireNonNull(uuid);
+        return Optional.ofNullable(load(names, uuid, () -> storage.getName(uuid).orElse(null)));
+    }
+
+    /**
+     * Loads missing values without any lock, because the loader runs while the cache holds the key's bin and writers
+     * touch those bins. A value loaded while a write was running may be stale, so it is returned but not kept.
+     */
+    private <K, V> V load(BoundedExpiringCache<K, V> cache, K key, Lookup<V> lookup) throws StorageException {
+        long writesBefore = writeCount.get();
+        boolean writing = 0 != activeWrites.get();
+        AtomicBoolean loaded = new AtomicBoolean();
+        V value;
+        try {
+            value = cache.get(key, k -> {
+                loaded.set(true);
+                try {
+                    return lookup.get();
+                } catch (StorageException ex) {
+                    throw new UncheckedStorageException(ex);
+                }
+            });
+        } catch (UncheckedStorageException ex) {
+            throw ex.getCause();
+        }
+        if (loaded.get() && (writing || writeCount.get() != writesBefore)) {
+            cache.invalidate(key);
+        }
+        return value;
+    }
+
+    @Override
+    public void setEntry(UUID uuid, String name) throws StorageException {
+        Objects.requireNonNull(uuid);
+        Objects.requireNonNull(name);
+        writeLock.lock();
+        activeWrites.incrementAndGet();
+        writeCount.incrementAndGet();
+        try {
+            try {
+                storage.setEntry(uuid, name);
+            } finally {
+                invalidate(uuid, name);
+            }
+            names.put(uuid, name);
+            uuids.put(toKey(name), uuid);
+        } finally {
+            activeWrites.decrementAndGet();
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void setEntries(Map<UUID, String> entries) throws StorageException {
+        Objects.requireNonNull(entries);
+        writeLock.lock();
+        activeWrites.incrementAndGet();
+        writeCount.incrementAndGet();
+        try {
+            try {
+                storage.setEntries(entries);
+            } finally {
+                entries.forEach(this::invalidate);
+            }
+            entries.forEach((uuid, name) -> {
+                names.put(uuid, name);
+                uuids.put(toKey(name), uuid);
+            });
+        } finally {
+            activeWrites.decrementAndGet();
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public List<String> findNames(String prefix, int limit) throws StorageException {
+        List<String> found = storage.findNames(prefix, limit);
+        return found.isEmpty() ? findCachedNames(prefix, limit) : found;
+    }
+
+    private List<String> findCachedNames(String prefix, int limit) {
+        String keyPrefix = toKey(prefix);
+        SortedSet<String> found = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        names.forEach((uuid, name) -> {
+            if (toKey(name).startsWith(keyPrefix)) {
+                found.add(name);
+            }
+        });
+        List<String> result = new ArrayList<>(Math.min(limit, found.size()));
+        for (String name : found) {
+            if (result.size() >= limit) {
+                break;
+            }
+            result.add(name);
+        }
+        return result;
+    }
+
+    @Override
+    public void forEachEntry(BiConsumer<UUID, String> consumer) throws StorageException {
+        storage.forEachEntry(consumer);
+    }
+
+    // forget the player's old name as well as the old holder of the new name
+    private void invalidate(UUID uuid, String name) {
+        String oldName = names.peek(uuid);
+        if (null != oldName) {
+            uuids.invalidate(toKey(oldName));
+        }
+        UUID oldHolder = uuids.peek(toKey(name));
+        if (null != oldHolder) {
+            names.invalidate(oldHolder);
+        }
+        names.invalidate(uuid);
+        uuids.invalidate(toKey(name));
+    }
+
+    @FunctionalInterface
+    private interface Lookup<V> {
+        V get() throws StorageException;
+    }
+
+    private static String toKey(String playerName) {
+        return playerName.toLowerCase(Locale.ROOT);
+    }
+
+    public BoundedExpiringCache<UUID, String> getNameCache() {
+        return names;
+    }
+
+    public BoundedExpiringCache<String, UUID> getUuidCache() {
+        return uuids;
+    }
+
+    @Override
+    public void close() throws StorageException {
+        names.invalidateAll();
+        uuids.invalidateAll();
+        storage.close();
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Niklas Seyfarth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package mr.minecraft15.onlinetime.common;
+
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Concurrent map from player UUID to a primitive long, stored in striped open-addressing tables.
+ * <p>
+ * Keys are kept as the two longs of the UUID and values as primitives, so lookups and updates do not allocate.
+ * Structural changes lock a single segment, while {@link #replaceAll(EntryUpdater, ReplacementConsumer)} takes no lock
+ * at all and swaps each value with a compare-and-set. A slot's key never changes once written; removed entries leave a
+ * tombstone until the segment is rebuilt, and rebuilding marks every old slot as moved before the new table is
+ * published. {@link #ABSENT} and the two values above it are reserved and can not be stored.
+ */
+final class SessionTable {
+
+    static final long ABSENT = Long.MIN_VALUE;
+    private static final long TOMBSTONE = Long.MIN_VALUE + 1;
+    private static final long MOVED = Long.MIN_VALUE + 2;
+
+    private static final int SEGMENT_COUNT = 16;
+    private static final int INITIAL_SEGMENT_CAPACITY = 16;
+
+    private final Segment[] segments;
+
+    SessionTable() {
+        this.segments = new Segment[SEGMENT_COUNT];
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * @return the value associated with the UUID or {@link #ABSENT}
+     */
+    long get(UUID uuid) {
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        int hash = hash(msb, lsb);
+        return segmentFor(hash).get(msb, lsb, hash);
+    }
+
+    /**
+     * @return the previous value or {@link #ABSENT}
+     */
+    long put(UUID uuid, long value) {
+        checkValue(value);
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        int hash = hash(msb, lsb);
+        return segmentFor(hash).put(msb, lsb, hash, value);
+    }
+
+    /**
+     * @return the removed value or {@link #ABSENT}
+     */
+    long remove(UUID uuid) {
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        int hash = hash(msb, lsb);
+        return segmentFor(hash).remove(msb, lsb, hash);
+    }
+
+    /**
+     * Add to the value associated with the UUID, if there is one.
+     *
+     * @return whether a value was present
+     */
+    boolean addIfPresent(UUID uuid, long delta) {
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        int hash = hash(msb, lsb);
+        return segmentFor(hash).addIfPresent(msb, lsb, hash, delta);
+    }
+
+    /**
+     * Atomically replace each value with the result of the updater without locking. The updater must not have side
+     * effects, as it may be called again for the same entry; the consumer is called once for every value that was
+     * actually replaced. Entries changed or moved concurrently may be skipped.
+     */
+    void replaceAll(EntryUpdater updater, ReplacementConsumer consumer) {
+        Objects.requireNonNull(updater);
+        Objects.requireNonNull(consumer);
+        for (Segment segment : segments) {
+            segment.replaceAll(updater, consumer);
+        }
+    }
+
+    /**
+     * Remove all entries, passing each one to the consumer.
+     */
+    void removeAll(EntryConsumer consumer) {
+        Objects.requireNonNull(consumer);
+        for (Segment segment : segments) {
+            segment.removeAll(consumer);
+        }
+    }
+
+    int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    boolean isEmpty() {
+        for (Segment segment : segments) {
+            if (segment.size > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Segment segmentFor(int hash) {
+        return segments[(hash >>> 28) & (SEGMENT_COUNT - 1)];
+    }
+
+    private static int hash(long msb, long lsb) {
+        long hash = (msb ^ lsb) * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    private static boolean isValue(long value) {
+        return value > MOVED;
+    }
+
+    private static void checkValue(long value) {
+        if (!isValue(value)) {
+            throw new IllegalArgumentException("reserved value");
+        }
+    }
+
+    @FunctionalInterface
+    interface EntryUpdater {
+        long update(long msb, long lsb, long value);
+    }
+
+    @FunctionalInterface
+    interface ReplacementConsumer {
+        void accept(long msb, long lsb, long oldValue, long newValue);
+    }
+
+    @FunctionalInterface
+    interface EntryConsumer {
+        void accept(long msb, long lsb, long value);
+    }
+
+    private static final class Table {
+
+        private final long[] msbs;
+        private final long[] lsbs;
+        private final AtomicLongArray values;
+        private final int mask;
+
+        private Table(int capacity) {
+            this.msbs = new long[capacity];
+            this.lsbs = new long[capacity];
+            this.values = new AtomicLongArray(capacity);
+            this.mask = capacity - 1;
+            for (int index = 0; index < capacity; index++) {
+                values.lazySet(index, ABSENT);
+            }
+        }
+
+        // index of the key's slot, live or tombstone, or of the empty slot ending its probe sequence
+        private int indexOf(long msb, long lsb, int hash) {
+            for (int index = hash & mask; ; index = (index + 1) & mask) {
+                if (values.get(index) == ABSENT || (msbs[index] == msb && lsbs[index] == lsb)) {
+                    return index;
+                }
+            }
+        }
+    }
+
+    private static final class Segment {
+
+        private volatile Table table;
+        private volatile int size;
+        private int used;
+
+        private Segment() {
+            this.table = new Table(INITIAL_SEGMENT_CAPACITY);
+        }
+
+        synchronized long get(long msb, long lsb, int hash) {
+            long value = table.values.get(table.indexOf(msb, lsb, hash));
+            return isValue(value) ? value : ABSENT;
+        }
+
+        synchronized long put(long msb, long lsb, int hash, long value) {
+            Table current = table;
+            int index = current.indexOf(msb, lsb, hash);
+            if (current.values.get(index) == ABSENT) {
+                if ((used + 1) * 2 > current.values.length()) {
+                    current = rebuild(size + 1);
+                    index = current.indexOf(msb, lsb, hash);
+                }
+                current.msbs[index] = msb;
+                current.lsbs[index] = lsb;
+                used++;
+            }
+            long previous = current.values.getAndSet(index, value);
+            if (isValue(previous)) {
+                return previous;
+            }
+            size++;
+            return ABSENT;
+        }
+
+        synchronized long remove(long msb, long lsb, int hash) {
+            Table current = table;
+            int index = current.indexOf(msb, lsb, hash);
+            if (current.values.get(index) == ABSENT) {
+                return ABSENT;
+            }
+            long previous = current.values.getAndSet(index, TOMBSTONE);
+            if (isValue(previous)) {
+                size--;
+                return previous;
+            }
+            return ABSENT;
+        }
+
+        synchronized boolean addIfPresent(long msb, long lsb, int hash, long delta) {
+            Table current = table;
+            int index = current.indexOf(msb, lsb, hash);
+            while (true) {
+                long value = current.values.get(index);
+                if (!isValue(value)) {
+                    return false;
+                }
+                long updated = value + delta;
+                checkValue(updated);
+                if (current.values.compareAndSet(index, value, updated)) {
+                    return true;
+                }
+            }
+        }
+
+        void replaceAll(EntryUpdater updater, ReplacementConsumer consumer) {
+            Table current;
+            do {
+                current = table;
+                for (int index = 0; index < current.values.length(); index++) {
+                    long value = current.values.get(index);
+                    if (!isValue(value)) {
+                        continue;
+                    }
+                    // a slot's key is written before its first value and never changes afterwards
+                    long msb = current.msbs[index];
+                    long lsb = current.lsbs[index];
+                    long updated = updater.update(msb, lsb, value);
+                    if (updated != value) {
+                        checkValue(updated);
+                        if (current.values.compareAndSet(index, value, updated)) {
+                            consumer.accept(msb, lsb, value, updated);
+                        }
+                    }
+                }
+            } while (current != table); // rebuilt concurrently, entries already replaced are left unchanged by the updater
+        }
+
+        synchronized void removeAll(EntryConsumer consumer) {
+            Table current = table;
+            for (int index = 0; index < current.values.length(); index++) {
+                if (current.values.get(index) == ABSENT) {
+                    continue;
+                }
+                long value = current.values.getAndSet(index, TOMBSTONE);
+                if (isValue(value)) {
+                    consumer.accept(current.msbs[index], current.lsbs[index], value);
+                }
+            }
+            rebuild(0);
+        }
+
+        // copies live entries into a new table sized for the expected entries, dropping tombstones
+        private Table rebuild(int expectedSize) {
+            Table old = table;
+            int capacity = INITIAL_SEGMENT_CAPACITY;
+            while (expectedSize * 4 > capacity) {
+                capacity *= 2;
+            }
+            Table rebuilt = new Table(capacity);
+            int moved = 0;
+            for (int index = 0; index < old.values.length(); index++) {
+                if (old.values.get(index) == ABSENT) {
+                    continue;
+                }
+                long value = old.values.getAndSet(index, MOVED);
+                if (isValue(value)) {
+                    long msb = old.msbs[index];
+                    long lsb = old.lsbs[index];
+                    int newIndex = rebuilt.indexOf(msb, lsb, hash(msb, lsb));
+                    rebuilt.msbs[newIndex] = msb;
+                    rebuilt.lsbs[newIndex] = lsb;
+                    rebuilt.values.set(newIndex, value);
+                    moved++;
+                }
+            }
+            table = rebuilt;
+            used = moved;
+            size = moved;
+            return rebuilt;
+        }
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Niklas Seyfarth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package mr.minecraft15.onlinetime.common;
+
+import mr.minecraft15.onlinetime.api.FileStorageProvider;
+import mr.minecraft15.onlinetime.api.StorageException;
+
+import java.io.File;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * File storage provider that spreads its paths over several providers by the hash of their top level key. Every shard
+ * has its own lock and save cycle, so writes to different shards do not block each other and a save only rewrites the
+ * data of one shard.
+ */
+public class ShardedFileStorageProvider implements FileStorageProvider {
+
+    private static final int MIGRATION_BATCH_SIZE = 1000;
+
+    /**
+     * Creates the provider for a file in the storage directory.
+     */
+    @FunctionalInterface
+    public interface ProviderFactory {
+        FileStorageProvider create(String fileName) throws StorageException;
+    }
+
+    private final FileStorageProvider[] shards;
+
+    public ShardedFileStorageProvider(List<? extends FileStorageProvider> shards) {
+        Objects.requireNonNull(shards);
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("no shards");
+        }
+        this.shards = shards.toArray(new FileStorageProvider[0]);
+    }
+
+    /**
+     * Open the storage files for a base name, split into the given number of shards. A single shard is stored in
+     * {@code <name>.<extension>}, multiple shards in {@code <name>-<index>-of-<count>.<extension>}. Data stored with a
+     * different number of shards is copied into the new files, which are then renamed to {@code *.resharded}.
+     *
+     * @param directory storage directory
+     * @param name base name of the files
+     * @param extension file extension
+     * @param shardCount number of shards
+     * @param factory creates the provider of a single file
+     * @return the provider for the whole storage
+     * @throws StorageException if a file could not be opened or migrated
+     */
+    public static FileStorageProvider open(File directory, String name, String extension, int shardCount, ProviderFactory factory) throws StorageException {
+        Objects.requireNonNull(directory);
+        Objects.requireNonNull(name);
+        Objects.requireNonNull(extension);
+        Objects.requireNonNull(factory);
+        String singleFileName = name + "." + extension;
+        List<String> previousFiles = new ArrayList<>();
+        Pattern shardFilePattern = shardFilePattern(name, extension);
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Matcher matcher = shardFilePattern.matcher(file.getName());
+                if (matcher.matches() && Integer.parseInt(matcher.group(1)) != shardCount) {
+                    previousFiles.add(file.getName());
+                }
+            }
+        }
+
+        FileStorageProvider provider;
+        if (shardCount <= 1) {
+            provider = factory.create(singleFileName);
+        } else {
+            if (new File(directory, singleFileName).exists()) {
+                previousFiles.add(singleFileName);
+            }
+            List<FileStorageProvider> shards = new ArrayList<>(shardCount);
+            try {
+                for (int i = 0; i < shardCount; i++) {
+                    shards.add(factory.create(name + "-" + i + "-of-" + shardCount + "." + extension));
+                }
+            } catch (StorageException ex) {
+                closeAll(shards, ex);
+                throw ex;
+            }
+            provider = new ShardedFileStorageProvider(shards);
+        }
+
+        try {
+            // copying absolute values can be repeated if renaming the old files fails
+            for (String previousFile : previousFiles) {
+                FileStorageProvider previous = factory.create(previousFile);
+                try {
+                    copy(previous, provider);
+                } finally {
+                    previous.close();
+                }
+            }
+            for (String previousFile : previousFiles) {
+                File file = new File(directory, previousFile);
+                if (!file.renameTo(new File(directory, previousFile + ".resharded"))) {
+                    throw new StorageException("could not rename " + previousFile + " after moving its data");
+                }
+            }
+        } catch (StorageException ex) {
+            closeAll(Collections.singletonList(provider), ex);
+            throw ex;
+        }
+        return provider;
+    }
+
+    /**
+     * Find the numbers of shards the existing files for a base name were written with, without changing them.
+     *
+     * @param directory storage directory
+     * @param name base name of the files
+     * @param extension file extension
+     * @return the shard counts found, {@code 1} for a single file
+     */
+    public static Set<Integer> findShardCounts(File directory, String name, String extension) {
+        Objects.requireNonNull(directory);
+        Objects.requireNonNull(name);
+        Objects.requireNonNull(extension);
+        Set<Integer> shardCounts = new TreeSet<>();
+        if (new File(directory, name + "." + extension).exists()) {
+            shardCounts.add(1);
+        }
+        Pattern shardFilePattern = shardFilePattern(name, extension);
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Matcher matcher = shardFilePattern.matcher(file.getName());
+                if (matcher.matches()) {
+                    shardCounts.add(Integer.parseInt(matcher.group(1)));
+                }
+            }
+        }
+        return shardCounts;
+    }
+
+    private static Pattern shardFilePattern(String name, String extension) {
+        return Pattern.compile(Pattern.quote(name) + "-\\d+-of-(\\d+)\\." + Pattern.quote(extension));
+    }
+
+    private static void copy(FileStorageProvider from, FileStorageProvider to) throws StorageException {
+        Map<String, Object> batch = new HashMap<>();
+        try {
+            from.forEach((path, value) -> {
+                batch.put(path, value);
+                if (batch.size() >= MIGRATION_BATCH_SIZE) {
+                    try {
+                        to.writeAll(batch);
+                    } catch (StorageException ex) {
+                        throw new UncheckedStorageException(ex);
+                    }
+                    batch.clear();
+                }
+            });
+        } catch (UncheckedStorageException ex) {
+            throw ex.getCause();
+        }
+        to.writeAll(batch);
+    }
+
+    private static void closeAll(List<FileStorageProvider> providers, StorageException cause) {
+        for (FileStorageProvider provider : providers) {
+            try {
+                provider.close();
+            } catch (StorageException ex) {
+                cause.addSuppressed(ex);
+            }
+        }
+    }
+
+    private FileStorageProvider shardOf(String path) {
+        int separator = path.indexOf('.');
+        String key = separator < 0 ? path : path.substring(0, separator);
+        // spread the string hash, its low bits barely differ for similar keys
+        int hash = key.hashCode() * 0x9e3779b9;
+        return shards[Math.floorMod(hash ^ (hash >>> 16), shards.length)];
+    }
+
+    private Map<FileStorageProvider, Set<String>> groupPaths(Set<String> paths) {
+        Map<FileStorageProvider, Set<String>> grouped = new IdentityHashMap<>(shards.length);
+        for (String path : paths) {
+            grouped.computeIfAbsent(shardOf(path), shard -> new HashSet<>()).add(path);
+        }
+        return grouped;
+    }
+
+    @Override
+    public Object read(String path) throws StorageException {
+        Objects.requireNonNull(path);
+        return shardOf(path).read(path);
+    }
+
+    @Override
+    public Map<String, ?> read(Set<String> paths) throws StorageException {
+        Objects.requireNonNull(paths);
+        Map<String, Object> data = new HashMap<>();
+        for (Map.Entry<FileStorageProvider, Set<String>> shardPaths : groupPaths(paths).entrySet()) {
+            data.putAll(shardPaths.getKey().read(shardPaths.getValue()));
+        }
+        return data;
+    }
+
+    @Override
+    public void write(String path, Object data) throws StorageException {
+        Objects.requireNonNull(path);
+        shardOf(path).write(path, data);
+    }
+
+    @Override
+    public void delete(String path) throws StorageException {
+        Objects.requireNonNull(path);
+        shardOf(path).delete(path);
+    }
+
+    @Override
+    public Map<String, ?> readAll() throws StorageException {
+        Map<String, Object> data = new HashMap<>();
+        for (FileStorageProvider shard : shards) {
+            data.putAll(shard.readAll());
+        }
+        return data;
+    }
+
+    @Override
+    public void forEach(BiConsumer<String, Object> consumer) throws StorageException {
+        Objects.requireNonNull(consumer);
+        for (FileStorageProvider shard : shards) {
+            shard.forEach(consumer);
+        }
+    }
+
+    @Override
+    public void writeAll(Map<String, ?> data) throws StorageException {
+        Objects.requireNonNull(data);
+        Map<FileStorageProvider, Map<String, Object>> grouped = new IdentityHashMap<>(shards.length);
+        for (Map.Entry<String, ?> entry : data.entrySet()) {
+            grouped.computeIfAbsent(shardOf(entry.getKey()), shard -> new HashMap<>()).put(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<FileStorageProvider, Map<String, Object>> shardData : grouped.entrySet()) {
+            shardData.getKey().writeAll(shardData.getValue());
+        }
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    @Override
+    public void close() throws StorageException {
+        StorageException failure = null;
+        for (FileStorageProvider shard : shards) {
+            try {
+                shard.close();
+            } catch (StorageException ex) {
+                if (failure == null) {
+                    failure = ex;
+                } else {
+                    failure.addSuppressed(ex);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Niklas Seyfarth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package mr.minecraft15.onlinetime.common;
+
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Executor owned by the plugin for all blocking storage work, so that a slow storage never occupies the shared
+ * asynchronous pools of the server.
+ * <p>
+ * At most {@code threads} tasks run at once on platform threads. On Java 21 and later virtual threads can be used
+ * instead, then every task gets its own thread. In both cases no more than {@code threads + queueSize} tasks are
+ * pending, {@link #execute(Runnable)} rejects further tasks.
+ */
+public class StorageExecutor implements Executor {
+
+    private final ExecutorService executor;
+    private final boolean virtual;
+    private final int capacity;
+    private final Semaphore pending;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder overflowed = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAccumulator maxPending = new LongAccumulator(Math::max, 0);
+
+    /**
+     * @param name name of the storage, used for thread names
+     * @param threads maximum number of platform threads
+     * @param queueSize maximum number of tasks waiting in addition to the running ones
+     * @param useVirtualThreads run tasks on virtual threads if the Java version supports them
+     */
+    public StorageExecutor(String name, int threads, int queueSize, boolean useVirtualThreads) {
+        Objects.requireNonNull(name);
+        if (threads < 1 || queueSize < 0) {
+            throw new IllegalArgumentException("threads must be positive and queue size must not be negative");
+        }
+        String threadName = "OnlineTime " + name + " storage ";
+        ExecutorService virtualExecutor = useVirtualThreads ? createVirtualThreadExecutor(threadName) : null;
+        this.virtual = virtualExecutor != null;
+        this.executor = virtual ? virtualExecutor : createPlatformThreadExecutor(threadName, threads);
+        this.capacity = threads + queueSize;
+        this.pending = new Semaphore(capacity);
+    }
+
+    private static ExecutorService createPlatformThreadExecutor(String threadName, int threads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, threadName + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Thread.ofVirtual() and Executors.newThreadPerTaskExecutor(ThreadFactory) exist since Java 21, but the plugin is
+     * compiled for Java 8.
+     */
+    private static ExecutorService createVirtualThreadExecutor(String threadName) {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, threadName, 1L);
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, factory);
+        } catch (ReflectiveOperationException | ClassCastException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * @return whether tasks run on virtual threads
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * Run the task, unless the executor is saturated or shut down.
+     *
+     * @param task task to run
+     * @throws RejectedExecutionException if too many tasks are pending or the executor is shut down
+     */
+    @Override
+    public void execute(Runnable task) {
+        Objects.requireNonNull(task);
+        if (!pending.tryAcquire()) {
+            rejected.increment();
+            throw new RejectedExecutionException("more than " + capacity + " storage tasks pending");
+        }
+        maxPending.accumulate(capacity - pending.availablePermits());
+        long submitTime = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                waitNanos.add(System.nanoTime() - submitTime);
+                active.incrementAndGet();
+                try {
+                    task.run();
+                } finally {
+                    active.decrementAndGet();
+                    completed.increment();
+                    pending.release();
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            pending.release();
+            rejected.increment();
+            throw ex;
+        }
+        submitted.increment();
+    }
+
+    /**
+     * Run the task, or hand it to the fallback if this executor is saturated or shut down. Used for tasks that must
+     * not be lost, like writes.
+     *
+     * @param task task to run
+     * @param fallback executor used if the task is rejected
+     */
+    public void executeOrElse(Runnable task, Executor fallback) {
+        try {
+            execute(task);
+        } catch (RejectedExecutionException ex) {
+            overflowed.increment();
+            fallback.execute(task);
+        }
+    }
+
+    /**
+     * Stop accepting tasks and wait for the pending ones.
+     *
+     * @param timeout maximum time to wait
+     * @param unit unit of the timeout
+     * @return whether all pending tasks finished
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        executor.shutdown();
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    public int getPendingCount() {
+        return capacity - pending.availablePermits();
+    }
+
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    public long getCompletedCount() {
+        return completed.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public String statistics() {
+        long submittedCount = submitted.sum();
+        long averageWaitMicros = submittedCount == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(waitNanos.sum() / submittedCount);
+        return (virtual ? "virtual" : "platform") + " threads, pending=" + getPendingCount() + ", active=" + getActiveCount()
+                + ", maxpending=" + maxPending.get() + ", completed=" + getCompletedCount() + ", rejected=" + getRejectedCount()
+                + ", overflowed=" + overflowed.sum() + ", averagewait=" + averageWaitMicros + "us";
+    }
+}
@@ -0,0 +1,384 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Niklas Seyfarth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package mr.minecraft15.onlinetime.common;
+
+import mr.minecraft15.onlinetime.api.FileStorageProvider;
+import mr.minecraft15.onlinetime.api.StorageException;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * Copies all player names and online times from one storage backend to another. Entries are read ordered by uuid and
+ * written to the target in batches. After every batch the uuid of the last copied entry is saved to a progress file,
+ * so an interrupted migration continues after it. Players added to the source meanwhile are only copied if their uuid
+ * comes after it. Entries are copied as absolute values, repeating a batch is therefore harmless.
+ */
+public class StorageMigration {
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    public static final List<String> STORAGE_NAMES = Collections.unmodifiableList(Arrays.asList("yaml", "binlog", "mmap", "database"));
+
+    private static final String NAMES_PHASE = "names";
+    private static final String TIMES_PHASE = "times";
+    private static final String COPIED_SUFFIX = ".copied";
+
+    /**
+     * Opened storages of a backend. Storages which are in use by the plugin are passed in and not closed afterwards.
+     */
+    public static class Backend implements AutoCloseable {
+
+        private final BulkOnlineTimeStorage onlineTimes;
+        private final boolean ownsOnlineTimes;
+        private final PlayerNameStorage names;
+        private final boolean ownsNames;
+
+        public Backend(BulkOnlineTimeStorage onlineTimes, boolean ownsOnlineTimes, PlayerNameStorage names, boolean ownsNames) {
+            this.onlineTimes = Objects.requireNonNull(onlineTimes);
+            this.ownsOnlineTimes = ownsOnlineTimes;
+            this.names = names;
+            this.ownsNames = ownsNames;
+        }
+
+        public BulkOnlineTimeStorage getOnlineTimes() {
+            return onlineTimes;
+        }
+
+        public PlayerNameStorage getNames() {
+            return names;
+        }
+
+        @Override
+        public void close() throws StorageException {
+            StorageException failure = null;
+            if (ownsNames && names != null && names != onlineTimes) {
+                try {
+                    names.close();
+                } catch (StorageException ex) {
+                    failure = ex;
+                }
+            }
+            if (ownsOnlineTimes) {
+                try {
+                    onlineTimes.close();
+                } catch (StorageException ex) {
+                    if (failure != null) {
+                        ex.addSuppressed(failure);
+                    }
+                    failure = ex;
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Opens the storages of a backend.
+     */
+    @FunctionalInterface
+    public interface BackendOpener {
+        /**
+         * @param storage name of the storage, one of {@link #STORAGE_NAMES}
+         * @param withNames whether the player name storage is needed as well
+         */
+        Backend open(String storage, boolean withNames) throws StorageException;
+    }
+
+    /**
+     * Opens a file storage provider for a base name, e.g. {@code names} or {@code time}.
+     */
+    @FunctionalInterface
+    public interface FileStorageOpener {
+        FileStorageProvider open(String name) throws StorageException;
+    }
+
+    /**
+     * Loads the properties of the database connection.
+     */
+    @FunctionalInterface
+    public interface PropertiesLoader {
+        Properties load() throws StorageException;
+    }
+
+    /**
+     * Notified after every batch that was written.
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        /**
+         * @param names whether player names or online times are copied
+         * @param copied number of entries of this kind copied so far
+         */
+        void progress(boolean names, long copied);
+    }
+
+    private final String from;
+    private final String to;
+    private final int batchSize;
+    private final File progressFile;
+
+    /**
+     * @param from storage to read from, one of {@link #STORAGE_NAMES}
+     * @param to storage to write to, one of {@link #STORAGE_NAMES}
+     * @param batchSize number of entries written at once
+     * @param directory directory of the progress file
+     */
+    public StorageMigration(String from, String to, int batchSize, File directory) {
+        if (!STORAGE_NAMES.contains(from) || !STORAGE_NAMES.contains(to) || from.equals(to)) {
+            throw new IllegalArgumentException("can not migrate from " + from + " to " + to);
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batch size must be positive");
+        }
+        this.from = from;
+        this.to = to;
+        this.batchSize = batchSize;
+        this.progressFile = new File(directory, "migration-" + from + "-to-" + to + ".progress");
+    }
+
+    /**
+     * Get the storage name used in this class for a name or alias of the storage setting.
+     *
+     * @param storage storage name or alias
+     * @return one of {@link #STORAGE_NAMES}, if the storage is known
+     */
+    public static Optional<String> canonicalName(String storage) {
+        switch (storage.toLowerCase(Locale.ROOT)) {
+            case "yaml":
+            case "yml":
+            case "file":
+                return Optional.of("yaml");
+            case "binlog":
+                return Optional.of("binlog");
+            case "mmap":
+            case "mapped":
+                return Optional.of("mmap");
+            case "sql":
+            case "mysql":
+            case "mariadb":
+            case "db":
+            case "database":
+                return Optional.of("database");
+            default:
+                return Optional.empty();
+        }
+    }
+
+    private static String nameStorageOf(String storage) {
+        // the memory mapped table only stores online times, names are kept in yaml
+        return "mmap".equals(storage) ? "yaml" : storage;
+    }
+
+    /**
+     * Open the storages of a backend that is not used by the plugin right now. Storages shared with the backend in use
+     * are taken from it instead of being opened a second time.
+     *
+     * @param storage storage to open, one of {@link #STORAGE_NAMES}
+     * @param withNames whether the player name storage is needed as well
+     * @param active backend in use, may be null
+     * @param activeStorage name of the backend in use, may be null
+     * @param directory data directory
+     * @param fileStorage opens yaml file storages
+     * @param databaseProperties loads the database connection settings
+     * @return the opened storages
+     * @throws StorageException if a storage could not be opened
+     */
+    public static Backend openBackend(String storage, boolean withNames, Backend active, String activeStorage, File directory,
+                                      FileStorageOpener fileStorage, PropertiesLoader databaseProperties) throws StorageException {
+        BulkOnlineTimeStorage onlineTimes;
+        boolean ownsOnlineTimes = active == null || !storage.equals(activeStorage);
+        if (!ownsOnlineTimes) {
+            onlineTimes = active.getOnlineTimes();
+        } else {
+            switch (storage) {
+                case "yaml":
+                    onlineTimes = new FileOnlineTimeStorage(fileStorage.open("time"));
+                    break;
+                case "binlog":
+                    onlineTimes = new BinaryLogStorage(directory);
+                    break;
+                case "mmap":
+                    onlineTimes = new MappedOnlineTimeStorage(directory);
+                    break;
+                case "database":
+                    onlineTimes = new DatabaseStorage(databaseProperties.load());
+                    break;
+                default:
+                    throw new StorageException("unknown storage " + storage);
+            }
+        }
+        if (!withNames) {
+            return new Backend(onlineTimes, ownsOnlineTimes, null, false);
+        }
+        if (active != null && nameStorageOf(storage).equals(nameStorageOf(activeStorage))) {
+            return new Backend(onlineTimes, ownsOnlineTimes, active.getNames(), false);
+        }
+        if (ownsOnlineTimes && onlineTimes instanceof PlayerNameStorage) {
+            return new Backend(onlineTimes, true, (PlayerNameStorage) onlineTimes, false);
+        }
+        try {
+            return new Backend(onlineTimes, ownsOnlineTimes, new FilePlayerNameStorage(fileStorage.open("names")), true);
+        } catch (StorageException ex) {
+            if (ownsOnlineTimes) {
+                try {
+                    onlineTimes.close();
+                } catch (StorageException closeEx) {
+                    ex.addSuppressed(closeEx);
+                }
+            }
+            throw ex;
+        }
+    }
+
+    public String getFrom() {
+        return from;
+    }
+
+    public String getTo() {
+        return to;
+    }
+
+    /**
+     * @return whether an earlier migration between the same storages was interrupted and will be continued
+     */
+    public boolean isResumed() {
+        return progressFile.exists();
+    }
+
+    /**
+     * Copy all entries. The progress file is deleted once everything was copied.
+     *
+     * @param opener opens the storages
+     * @param listener notified about the progress
+     * @return number of copied entries, including those copied by an interrupted run
+     * @throws StorageException if a storage could not be opened, read or written
+     */
+    public long run(BackendOpener opener, ProgressListener listener) throws StorageException {
+        Objects.requireNonNull(opener);
+        Objects.requireNonNull(listener);
+        boolean copyNames = !nameStorageOf(from).equals(nameStorageOf(to));
+        Properties progress = readProgress();
+        long copied = 0;
+        try (Backend source = opener.open(from, copyNames); Backend target = opener.open(to, copyNames)) {
+            if (copyNames) {
+                copied += copy(NAMES_PHASE, progress, source.getNames()::forEachEntry, target.getNames()::setEntries,
+                        count -> listener.progress(true, count));
+            }
+            copied += copy(TIMES_PHASE, progress, source.getOnlineTimes()::forEachOnlineTime, target.getOnlineTimes()::setOnlineTimes,
+                    count -> listener.progress(false, count));
+        }
+        try {
+            Files.deleteIfExists(progressFile.toPath());
+        } catch (IOException ex) {
+            throw new StorageException("could not delete " + progressFile.getName(), ex);
+        }
+        return copied;
+    }
+
+    @FunctionalInterface
+    private interface Source<V> {
+        void forEach(BiConsumer<UUID, V> consumer) throws StorageException;
+    }
+
+    @FunctionalInterface
+    private interface Target<V> {
+        void write(Map<UUID, V> batch) throws StorageException;
+    }
+
+    @FunctionalInterface
+    private interface PhaseListener {
+        void progress(long copied);
+    }
+
+    private <V> long copy(String phase, Properties progress, Source<V> source, Target<V> target, PhaseListener listener) throws StorageException {
+        // players up to this uuid were copied by an earlier run, position counts would break if the source changed
+        UUID copiedUpTo = UuidUtil.fromString(progress.getProperty(phase, "")).orElse(null);
+        long[] copied = {null != copiedUpTo ? Long.parseLong(progress.getProperty(phase + COPIED_SUFFIX, "0")) : 0};
+        Map<UUID, V> batch = new LinkedHashMap<>();
+        UUID[] previous = {null};
+        try {
+            source.forEach((uuid, value) -> {
+                if (null != previous[0] && UuidUtil.BYTE_ORDER.compare(previous[0], uuid) >= 0) {
+                    throw new UncheckedStorageException(new StorageException("source does not list players ordered by uuid"));
+                }
+                previous[0] = uuid;
+                if (null != copiedUpTo && UuidUtil.BYTE_ORDER.compare(uuid, copiedUpTo) <= 0) {
+                    return;
+                }
+                batch.put(uuid, value);
+                copied[0]++;
+                if (batch.size() >= batchSize) {
+                    try {
+                        writeBatch(phase, progress, batch, uuid, copied[0], target, listener);
+                    } catch (StorageException ex) {
+                        throw new UncheckedStorageException(ex);
+                    }
+                }
+            });
+        } catch (UncheckedStorageException ex) {
+            throw ex.getCause();
+        }
+        writeBatch(phase, progress, batch, previous[0], copied[0], target, listener);
+        return copied[0];
+    }
+
+    private <V> void writeBatch(String phase, Properties progress, Map<UUID, V> batch, UUID last, long copied, Target<V> target, PhaseListener listener) throws StorageException {
+        if (!batch.isEmpty()) {
+            target.write(batch);
+            batch.clear();
+            progress.setProperty(phase, last.toString());
+            progress.setProperty(phase + COPIED_SUFFIX, Long.toString(copied));
+            writeProgress(progress);
+        }
+        listener.progress(copied);
+    }
+
+    private Properties readProgress() throws StorageException {
+        Properties progress = new Properties();
+        if (progressFile.exists()) {
+            try (Reader reader = new InputStreamReader(new FileInputStream(progressFile), StandardCharsets.UTF_8)) {
+                progress.load(reader);
+            } catch (IOException ex) {
+                throw new StorageException("could not read " + progressFile.getName(), ex);
+            }
+        }
+        return progress;
+    }
+
+    private void writeProgress(Properties progress) throws StorageException {
+        StringWriter content = new StringWriter();
+        try {
+            progress.store(content, "migration from " + from + " to " + to + ", delete to start over");
+            FileUtil.writeAtomically(progressFile.toPath(), content.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException ex) {
+            throw new StorageException("could not write " + progressFile.getName(), ex);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Niklas Seyfarth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package mr.minecraft15.onlinetime.common;
+
+import mr.minecraft15.onlinetime.api.FileStorageProvider;
+import mr.minecraft15.onlinetime.api.PluginScheduler;
+import mr.minecraft15.onlinetime.api.PluginTask;
+import mr.minecraft15.onlinetime.api.StorageException;
+
+import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Migrates the storage of a plugin data folder while the server is stopped, e.g.
+ * {@code java -cp OnlineTime.jar:spigot.jar mr.minecraft15.onlinetime.common.StorageMigrationTool plugins/OnlineTime yaml database}.
+ * Yaml storage needs the Bukkit or BungeeCord API on the class path, the database storage its JDBC driver.
+ */
+public class StorageMigrationTool {
+
+    private static final long FILE_SAVE_DELAY = 5;
+    private static final String[][] YAML_PROVIDERS = {
+            {"org.bukkit.configuration.file.YamlConfiguration", "mr.minecraft15.onlinetime.bukkit.BukkitYamlFileStorageProvider"},
+            {"net.md_5.bungee.config.YamlConfiguration", "mr.minecraft15.onlinetime.bungee.BungeeYamlFileStorageProvider"}
+    };
+
+    public static void main(String[] args) {
+        if (args.length < 3 || args.length > 5) {
+            printUsage();
+            System.exit(2);
+            return;
+        }
+        File directory = new File(args[0]);
+        Optional<String> from = StorageMigration.canonicalName(args[1]);
+        Optional<String> to = StorageMigration.canonicalName(args[2]);
+        int batchSize;
+        int fileShards;
+        try {
+            batchSize = args.length > 3 ? Integer.parseInt(args[3]) : StorageMigration.DEFAULT_BATCH_SIZE;
+            fileShards = args.length > 4 ? Integer.parseInt(args[4]) : readFileShards(directory);
+        } catch (NumberFormatException ex) {
+            printUsage();
+            System.exit(2);
+            return;
+        } catch (IOException ex) {
+            System.err.println("could not read config.yml: " + ex.getMessage());
+            System.exit(2);
+            return;
+        }
+        if (!directory.isDirectory() || !from.isPresent() || !to.isPresent() || from.equals(to) || batchSize < 1 || fileShards < 1) {
+            printUsage();
+            System.exit(2);
+            return;
+        }
+
+        StorageMigration migration = new StorageMigration(from.get(), to.get(), batchSize, directory);
+        if (migration.isResumed()) {
+            System.out.println("continuing interrupted migration from " + migration.getFrom() + " to " + migration.getTo());
+        }
+        Logger logger = Logger.getLogger("OnlineTime");
+        long start = System.nanoTime();
+        try (ExecutorScheduler scheduler = new ExecutorScheduler()) {
+            StorageMigration.FileStorageOpener fileStorage = name -> {
+                checkShardCount(directory, name, fileShards);
+                return ShardedFileStorageProvider.open(directory, name, "yml", fileShards,
+                        fileName -> createYamlProvider(new File(directory, fileName), scheduler, logger));
+            };
+            StorageMigration.PropertiesLoader databaseProperties = () -> loadProperties(new File(directory, "database.properties"));
+            long copied = migration.run(
+                    (storage, withNames) -> StorageMigration.openBackend(storage, withNames, null, null, directory, fileStorage, databaseProperties),
+                    (names, count) -> System.out.println("copied " + count + (names ? " player names" : " online times")));
+            System.out.println("copied " + copied + " entries from " + migration.getFrom() + " to " + migration.getTo()
+                    + " in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+        } catch (StorageException ex) {
+            ex.printStackTrace();
+            System.err.println("migration failed, run it again to continue where it stopped");
+            System.exit(1);
+        }
+    }
+
+    private static void printUsage() {
+        System.err.println("usage: StorageMigrationTool <data folder> <from> <to> [batch size] [file shards]");
+        System.err.println("file shards default to fileshards in the config.yml of the data folder");
+        System.err.println("storages: " + String.join(", ", StorageMigration.STORAGE_NAMES));
+    }
+
+    /**
+     * Read {@code fileshards} from the config of the plugin, so the yaml files are opened like the plugin does.
+     */
+    private static int readFileShards(File directory) throws IOException {
+        File config = new File(directory, "config.yml");
+        if (!config.exists()) {
+            return 1;
+        }
+        Pattern fileShardsPattern = Pattern.compile("^fileshards:\\s*['\"]?(\\d+)['\"]?\\s*(#.*)?$");
+        for (String line : Files.readAllLines(config.toPath(), StandardCharsets.UTF_8)) {
+            Matcher matcher = fileShardsPattern.matcher(line);
+            if (matcher.matches()) {
+                return Integer.parseInt(matcher.group(1));
+            }
+        }
+        return 1;
+    }
+
+    // opening the files with another shard count would reshard the data of the plugin as a side effect
+    private static void checkShardCount(File directory, String name, int fileShards) throws StorageException {
+        Set<Integer> stored = ShardedFileStorageProvider.findShardCounts(directory, name, "yml");
+        if (!stored.isEmpty() && !stored.equals(Collections.singleton(fileShards))) {
+            throw new StorageException(name + " is stored in " + stored + " shards but " + fileShards + " are configured,"
+                    + " start the plugin once to reshard it or pass the stored shard count");
+        }
+    }
+
+    private static FileStorageProvider createYamlProvider(File file, PluginScheduler scheduler, Logger logger) throws StorageException {
+        for (String[] provider : YAML_PROVIDERS) {
+            try {
+                Class.forName(provider[0]);
+            } catch (ClassNotFoundException ex) {
+                continue;
+            }
+            try {
+                return (FileStorageProvider) Class.forName(provider[1])
+                        .getConstructor(File.class, PluginScheduler.class, long.class, Logger.class)
+                        .newInstance(file, scheduler, FILE_SAVE_DELAY, logger);
+            } catch (InvocationTargetException ex) {
+                if (ex.getCause() instanceof StorageException) {
+                    throw (StorageException) ex.getCause();
+                }
+                throw new StorageException("could not open " + file.getName(), ex.getCause());
+            } catch (ReflectiveOperationException ex) {
+                throw new StorageException("could not open " + file.getName(), ex);
+            }
+        }
+        throw new StorageException("yaml storage needs the Bukkit or BungeeCord API on the class path");
+    }
+
+    private static Properties loadProperties(File file) throws StorageException {
+        Properties properties = new Properties();
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        } catch (IOException ex) {
+            throw new StorageException("could not read " + file.getName(), ex);
+        }
+        return properties;
+    }
+
+    /**
+     * Runs the deferred saves of the yaml storage without a server scheduler.
+     */
+    private static class ExecutorScheduler implements PluginScheduler, AutoCloseable {
+
+        private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "OnlineTime migration scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        @Override
+        public PluginTask runAsyncOnce(Runnable task) {
+            return cancelling(executor.submit(task));
+        }
+
+        @Override
+        public PluginTask runAsyncOnceLater(long delay, Runnable task) {
+            return cancelling(executor.schedule(task, delay, TimeUnit.SECONDS));
+        }
+
+        @Override
+        public PluginTask scheduleAsync(long delay, long interval, Runnable task) {
+            return cancelling(executor.scheduleAtFixedRate(task, delay, interval, TimeUnit.SECONDS));
+        }
+
+        private static PluginTask cancelling(Future<?> future) {
+            return () -> future.cancel(false);
+        }
+
+        @Override
+        public void close() {
+            executor.shutdown();
+        }
+    }
+}
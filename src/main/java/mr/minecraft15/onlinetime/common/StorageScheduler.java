@@ -0,0 +1,100 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Niklas Seyfarth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package mr.minecraft15.onlinetime.common;
+
+import mr.minecraft15.onlinetime.api.PluginScheduler;
+import mr.minecraft15.onlinetime.api.PluginTask;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Scheduler that runs tasks on the {@link StorageExecutor}. Delays and intervals are still timed by the scheduler of
+ * the server, which only hands the tasks over. Tasks are run on the server's scheduler if the storage executor is
+ * saturated, so that they are delayed rather than lost.
+ */
+public class StorageScheduler implements PluginScheduler {
+
+    private final PluginScheduler serverScheduler;
+    private final StorageExecutor executor;
+
+    public StorageScheduler(PluginScheduler serverScheduler, StorageExecutor executor) {
+        this.serverScheduler = Objects.requireNonNull(serverScheduler);
+        this.executor = Objects.requireNonNull(executor);
+    }
+
+    @Override
+    public PluginTask runAsyncOnce(Runnable task) {
+        CancellableTask cancellableTask = new CancellableTask(task);
+        cancellableTask.submit();
+        return cancellableTask;
+    }
+
+    @Override
+    public PluginTask runAsyncOnceLater(long delay, Runnable task) {
+        CancellableTask cancellableTask = new CancellableTask(task);
+        cancellableTask.timer = serverScheduler.runAsyncOnceLater(delay, cancellableTask::submit);
+        return cancellableTask;
+    }
+
+    @Override
+    public PluginTask scheduleAsync(long delay, long interval, Runnable task) {
+        CancellableTask cancellableTask = new CancellableTask(task);
+        cancellableTask.timer = serverScheduler.scheduleAsync(delay, interval, cancellableTask::submit);
+        return cancellableTask;
+    }
+
+    private final class CancellableTask implements PluginTask {
+
+        private final Runnable task;
+        private final AtomicBoolean cancelled = new AtomicBoolean(false);
+        private volatile PluginTask timer;
+
+        private CancellableTask(Runnable task) {
+            this.task = Objects.requireNonNull(task);
+        }
+
+        private void submit() {
+            if (!cancelled.get()) {
+                executor.executeOrElse(this::run, serverScheduler::runAsyncOnce);
+            }
+        }
+
+        private void run() {
+            if (!cancelled.get()) {
+                task.run();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            cancelled.set(true);
+            PluginTask currentTimer = timer;
+            if (currentTimer != null) {
+                currentTimer.cancel();
+            }
+        }
+    }
+}
@@ -24,6 +24,7 @@
 
 package mr.minecraft15.onlinetime.common;
 
+import java.util.Comparator;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.regex.Matcher;
@@ -33,6 +34,12 @@ public final class UuidUtil {
 
     public static final Pattern UUID_PATTERN = Pattern.compile("([0-9a-f]{8})-?([0-9a-f]{4})-?([0-9a-f]{4})-?([0-9a-f]{4})-?([0-9a-f]{12})", Pattern.CASE_INSENSITIVE);
 
+    /**
+     * Orders uuids like their {@link #toBytes(UUID) bytes} compared unsigned, which is also the order of the database.
+     */
+    public static final Comparator<UUID> BYTE_ORDER = Comparator.comparing(UUID::getMostSignificantBits, Long::compareUnsigned)
+            .thenComparing(UUID::getLeastSignificantBits, Long::compareUnsigned);
+
     public static byte[] toBytes(UUID id) {
         byte[] result = new byte[16];
         long lsb = id.getLeastSignificantBits();
@@ -0,0 +1,94 @@
+package mr.minecraft15.onlinetime.common;
+
+import mr.minecraft15.onlinetime.api.OnlineTimeStorage;
+import mr.minecraft15.onlinetime.api.StorageException;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.OptionalLong;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class AccumulatingOnlineTimeStorageTest {
+
+    private static final UUID PLAYER = UUID.fromString("5f1c6c4e-0e4a-4a55-9c3c-8f2b7a0d6b31");
+
+    @Test
+    public void testFlushAndStop() throws StorageException {
+        ManualClock clock = new ManualClock(1_000_000);
+        OnlineTimeStorage storage = mock(OnlineTimeStorage.class);
+        AccumulatingOnlineTimeStorage accumulator = new AccumulatingOnlineTimeStorage(storage, clock);
+
+        accumulator.startAccumulating(PLAYER, clock.millis());
+        clock.advance(30_000);
+        accumulator.flushOnlineTimeCache();
+        verify(storage).addOnlineTimes(Collections.singletonMap(PLAYER, 30L));
+
+        clock.advance(12_000);
+        accumulator.stopAccumulatingAndSaveOnlineTime(PLAYER, clock.millis());
+        verify(storage).addOnlineTime(PLAYER, 12L);
+
+        accumulator.flushOnlineTimeCache();
+        verifyNoMoreInteractions(storage);
+    }
+
+    @Test
+    public void testFlushKeepsSubSecondRemainder() throws StorageException {
+        ManualClock clock = new ManualClock(0);
+        OnlineTimeStorage storage = mock(OnlineTimeStorage.class);
+        AccumulatingOnlineTimeStorage accumulator = new AccumulatingOnlineTimeStorage(storage, clock);
+
+        accumulator.startAccumulating(PLAYER, clock.millis());
+        for (int i = 0; i < 4; i++) {
+            clock.advance(1_500);
+            accumulator.flushOnlineTimeCache();
+        }
+        verify(storage, times(2)).addOnlineTimes(Collections.singletonMap(PLAYER, 1L));
+        verify(storage, times(2)).addOnlineTimes(Collections.singletonMap(PLAYER, 2L));
+
+        clock.advance(1_000);
+        accumulator.stopAccumulatingAndSaveOnlineTime(PLAYER, clock.millis());
+        verify(storage).addOnlineTime(PLAYER, 1L);
+    }
+
+    @Test
+    public void testOnlineTimeIncludesRunningSession() throws StorageException {
+        ManualClock clock = new ManualClock(1_000_000);
+        OnlineTimeStorage storage = mock(OnlineTimeStorage.class);
+        when(storage.getOnlineTime(PLAYER)).thenReturn(OptionalLong.of(100));
+        AccumulatingOnlineTimeStorage accumulator = new AccumulatingOnlineTimeStorage(storage, clock);
+
+        accumulator.startAccumulating(PLAYER, clock.millis());
+        clock.advance(5_000);
+        assertEquals(OptionalLong.of(105), accumulator.getOnlineTime(PLAYER));
+
+        accumulator.addOnlineTime(PLAYER, 10);
+        assertEquals(OptionalLong.of(115), accumulator.getOnlineTime(PLAYER));
+        verify(storage, never()).addOnlineTime(any(), anyLong());
+    }
+
+    @Test
+    public void testWallClockConversion() {
+        ManualClock clock = new ManualClock(1_000);
+        clock.setWallOffset(500_000);
+
+        assertEquals(900, clock.fromWallMillis(500_900));
+        assertEquals(500_900, clock.toWallMillis(900));
+    }
+
+    @Test
+    public void testCloseSavesRunningSessions() throws StorageException {
+        ManualClock clock = new ManualClock(0);
+        OnlineTimeStorage storage = mock(OnlineTimeStorage.class);
+        AccumulatingOnlineTimeStorage accumulator = new AccumulatingOnlineTimeStorage(storage, clock);
+
+        accumulator.startAccumulating(PLAYER, clock.millis());
+        clock.advance(7_000);
+        accumulator.close();
+
+        verify(storage).addOnlineTimes(Collections.singletonMap(PLAYER, 7L));
+        verify(storage).close();
+    }
+}
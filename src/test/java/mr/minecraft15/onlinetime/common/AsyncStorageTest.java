@@ -0,0 +1,107 @@
+package mr.minecraft15.onlinetime.common;
+
+import mr.minecraft15.onlinetime.api.OnlineTimeStorage;
+import mr.minecraft15.onlinetime.api.PluginScheduler;
+import mr.minecraft15.onlinetime.api.StorageException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.OptionalLong;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class AsyncStorageTest {
+
+    private static final UUID PLAYER = UUID.fromString("0b7bd8a4-8ab2-4d7b-9a53-2ac5a1f2ab7e");
+
+    private final StorageExecutor executor = new StorageExecutor("test", 1, 1, false);
+
+    @AfterEach
+    public void shutdownExecutor() throws InterruptedException {
+        executor.shutdown(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testCompletesWithResultOrStorageException() throws Exception {
+        OnlineTimeStorage timeStorage = mock(OnlineTimeStorage.class);
+        when(timeStorage.getOnlineTime(PLAYER)).thenReturn(OptionalLong.of(42));
+        PlayerNameStorage nameStorage = mock(PlayerNameStorage.class);
+        StorageException failure = new StorageException("offline");
+        doThrow(failure).when(nameStorage).setEntry(PLAYER, "Notch");
+        AsyncStorage storage = new AsyncStorage(timeStorage, nameStorage, executor, executor);
+
+        assertEquals(OptionalLong.of(42), storage.getOnlineTime(PLAYER).get(5, TimeUnit.SECONDS));
+        ExecutionException ex = assertThrows(ExecutionException.class, () -> storage.setEntry(PLAYER, "Notch").get(5, TimeUnit.SECONDS));
+        assertSame(failure, ex.getCause());
+        CompletableFuture<Object> dependent = storage.setEntry(PLAYER, "Notch").thenApply(ignored -> null);
+        assertSame(failure, AsyncStorage.unwrap(assertThrows(ExecutionException.class, () -> dependent.get(5, TimeUnit.SECONDS)).getCause()));
+    }
+
+    @Test
+    public void testRejectsCallsBeyondQueueCapacity() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AsyncStorage storage = new AsyncStorage(mock(OnlineTimeStorage.class), mock(PlayerNameStorage.class), executor, executor);
+        CountDownLatch running = new CountDownLatch(1);
+        CompletableFuture<Object> blocking = storage.supply(() -> {
+            running.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        });
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        CompletableFuture<OptionalLong> queued = storage.getOnlineTime(PLAYER);
+
+        CompletableFuture<OptionalLong> rejected = storage.getOnlineTime(PLAYER);
+
+        ExecutionException ex = assertThrows(ExecutionException.class, () -> rejected.get(5, TimeUnit.SECONDS));
+        assertTrue(ex.getCause() instanceof StorageException);
+        release.countDown();
+        blocking.get(5, TimeUnit.SECONDS);
+        queued.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testWritesWaitForServerSchedulerWhenSaturated() throws Exception {
+        PluginScheduler serverScheduler = mock(PluginScheduler.class);
+        doAnswer(invocation -> {
+            Runnable task = invocation.getArgument(0);
+            new Thread(task).start();
+            return null;
+        }).when(serverScheduler).runAsyncOnce(any());
+        StorageScheduler scheduler = new StorageScheduler(serverScheduler, executor);
+        PlayerNameStorage nameStorage = mock(PlayerNameStorage.class);
+        AsyncStorage storage = new AsyncStorage(mock(OnlineTimeStorage.class), nameStorage, executor, scheduler::runAsyncOnce);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch running = new CountDownLatch(1);
+        CompletableFuture<Object> blocking = storage.supply(() -> {
+            running.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        });
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        CompletableFuture<OptionalLong> queued = storage.getOnlineTime(PLAYER);
+
+        assertThrows(ExecutionException.class, () -> storage.getName(PLAYER).get(5, TimeUnit.SECONDS));
+        storage.setEntry(PLAYER, "Notch").get(5, TimeUnit.SECONDS);
+
+        verify(nameStorage).setEntry(PLAYER, "Notch");
+        verify(serverScheduler).runAsyncOnce(any());
+        release.countDown();
+        blocking.get(5, TimeUnit.SECONDS);
+        queued.get(5, TimeUnit.SECONDS);
+    }
+}
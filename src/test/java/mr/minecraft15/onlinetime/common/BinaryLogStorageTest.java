@@ -0,0 +1,97 @@
+package mr.minecraft15.onlinetime.common;
+
+import mr.minecraft15.onlinetime.api.StorageException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BinaryLogStorageTest {
+
+    private static final UUID PLAYER = UUID.fromString("0b7bd8a4-8ab2-4d7b-9a53-2ac5a1f2ab7e");
+    private static final UUID OTHER_PLAYER = UUID.fromString("7e1a1bd2-6ce5-4c1c-9f0e-2b3cd1bf3b3e");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testDataSurvivesRestart() throws StorageException {
+        BinaryLogStorage storage = new BinaryLogStorage(directory.toFile());
+        storage.addOnlineTime(PLAYER, 300);
+        Map<UUID, Long> times = new HashMap<>();
+        times.put(PLAYER, -20L);
+        times.put(OTHER_PLAYER, 45L);
+        storage.addOnlineTimes(times);
+        storage.setEntry(PLAYER, "Notch");
+        storage.setEntry(OTHER_PLAYER, "jeb_");
+        storage.setEntry(PLAYER, "jeb_");
+        storage.close();
+
+        BinaryLogStorage reopened = new BinaryLogStorage(directory.toFile());
+        assertEquals(OptionalLong.of(280), reopened.getOnlineTime(PLAYER));
+        assertEquals(OptionalLong.of(45), reopened.getOnlineTime(OTHER_PLAYER));
+        assertEquals(Optional.of(PLAYER), reopened.getUuid("jeb_"));
+        assertEquals(Optional.empty(), reopened.getUuid("Notch"));
+        assertEquals(Optional.empty(), reopened.getName(OTHER_PLAYER));
+        reopened.close();
+    }
+
+    @Test
+    public void testLogIsReplayedWithoutClose() throws StorageException, IOException {
+        // left open like after a crash
+        BinaryLogStorage storage = new BinaryLogStorage(directory.toFile());
+        storage.addOnlineTime(PLAYER, 100);
+        storage.compactNow();
+        storage.addOnlineTime(PLAYER, 50);
+        storage.addOnlineTime(PLAYER, 7);
+
+        File log = directory.resolve(BinaryLogStorage.LOG_FILE_NAME).toFile();
+        try (RandomAccessFile raw = new RandomAccessFile(log, "rw")) {
+            raw.setLength(raw.length() - 1);
+        }
+
+        BinaryLogStorage reopened = new BinaryLogStorage(directory.toFile());
+        assertEquals(OptionalLong.of(150), reopened.getOnlineTime(PLAYER));
+        reopened.addOnlineTime(PLAYER, 1);
+        reopened.close();
+
+        BinaryLogStorage again = new BinaryLogStorage(directory.toFile());
+        assertEquals(OptionalLong.of(151), again.getOnlineTime(PLAYER));
+        again.close();
+    }
+
+    @Test
+    public void testEmptyLogAfterCompactionIsStartedOver() throws StorageException, IOException {
+        BinaryLogStorage storage = new BinaryLogStorage(directory.toFile());
+        storage.addOnlineTime(PLAYER, 100);
+        storage.setEntry(PLAYER, "Notch");
+        storage.compactNow();
+        storage.close();
+
+        // crashed after truncating the log but before writing its header
+        File log = directory.resolve(BinaryLogStorage.LOG_FILE_NAME).toFile();
+        try (RandomAccessFile raw = new RandomAccessFile(log, "rw")) {
+            raw.setLength(0);
+        }
+
+        BinaryLogStorage reopened = new BinaryLogStorage(directory.toFile());
+        assertEquals(OptionalLong.of(100), reopened.getOnlineTime(PLAYER));
+        assertEquals(Optional.of(PLAYER), reopened.getUuid("Notch"));
+        reopened.addOnlineTime(PLAYER, 5);
+        reopened.close();
+
+        BinaryLogStorage again = new BinaryLogStorage(directory.toFile());
+        assertEquals(OptionalLong.of(105), again.getOnlineTime(PLAYER));
+        again.close();
+    }
+}
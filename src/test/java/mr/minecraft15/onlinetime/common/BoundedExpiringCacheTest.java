@@ -0,0 +1,84 @@
+package mr.minecraft15.onlinetime.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BoundedExpiringCacheTest {
+
+    @Test
+    public void testHitsAndMisses() {
+        BoundedExpiringCache<String, Integer> cache = new BoundedExpiringCache<>(0, 0, 0, TimeUnit.SECONDS, () -> 0L);
+
+        assertEquals(1, cache.get("a", key -> 1));
+        assertEquals(1, cache.get("a", key -> 2));
+        assertNull(cache.get("b", key -> null));
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testExpireAfterWrite() {
+        AtomicLong time = new AtomicLong();
+        BoundedExpiringCache<String, Integer> cache = new BoundedExpiringCache<>(0, 10, 0, TimeUnit.NANOSECONDS, time::get);
+
+        cache.put("a", 1);
+        time.set(9);
+        assertEquals(1, cache.get("a", key -> 2));
+        time.set(10);
+        assertEquals(2, cache.get("a", key -> 2));
+        assertEquals(1, cache.getEvictionCount());
+
+        time.set(15);
+        cache.put("b", 3);
+        time.set(20);
+        Map<String, Integer> live = new HashMap<>();
+        cache.forEach(live::put);
+        assertEquals(Collections.singletonMap("b", 3), live);
+    }
+
+    @Test
+    public void testExpireAfterAccess() {
+        AtomicLong time = new AtomicLong();
+        BoundedExpiringCache<String, Integer> cache = new BoundedExpiringCache<>(0, 0, 10, TimeUnit.NANOSECONDS, time::get);
+
+        cache.put("a", 1);
+        cache.put("b", 1);
+        time.set(8);
+        assertEquals(1, cache.get("a", key -> 2));
+        time.set(12);
+        cache.cleanUp();
+        assertEquals(1, cache.peek("a"));
+        assertNull(cache.peek("b"));
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testSizeLimitEvictsLeastRecentlyAccessed() {
+        AtomicLong time = new AtomicLong();
+        BoundedExpiringCache<Integer, Integer> cache = new BoundedExpiringCache<>(10, 0, 0, TimeUnit.NANOSECONDS, time::get);
+
+        for (int i = 0; i < 10; i++) {
+            time.incrementAndGet();
+            cache.put(i, i);
+        }
+        time.incrementAndGet();
+        cache.get(0, key -> -1);
+        time.incrementAndGet();
+        cache.put(10, 10);
+
+        assertTrue(cache.size() <= 10);
+        assertEquals(0, cache.peek(0));
+        assertNull(cache.peek(1));
+        assertEquals(10, cache.peek(10));
+        assertEquals(11 - cache.size(), cache.getEvictionCount());
+    }
+}
@@ -0,0 +1,85 @@
+package mr.minecraft15.onlinetime.common;
+
+import mr.minecraft15.onlinetime.api.PluginScheduler;
+import mr.minecraft15.onlinetime.api.PluginTask;
+import mr.minecraft15.onlinetime.api.StorageException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class DeferredFileSaverTest {
+
+    private static final Logger LOGGER = Logger.getLogger(DeferredFileSaverTest.class.getName());
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testChangesAreCoalescedIntoOneSave() throws StorageException, IOException {
+        File file = directory.resolve("names.yml").toFile();
+        PluginScheduler scheduler = mock(PluginScheduler.class);
+        when(scheduler.runAsyncOnceLater(anyLong(), any())).thenReturn(mock(PluginTask.class));
+        AtomicInteger serializations = new AtomicInteger();
+        DeferredFileSaver saver = new DeferredFileSaver(file, () -> "saves: " + serializations.incrementAndGet(), null, scheduler, 5, LOGGER);
+
+        for (int i = 0; i < 200; i++) {
+            saver.markDirty();
+        }
+        assertFalse(file.exists());
+
+        ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler, times(1)).runAsyncOnceLater(eq(5L), task.capture());
+        task.getValue().run();
+
+        assertEquals("saves: 1", read(file));
+        assertFalse(saver.isDirty());
+
+        saver.markDirty();
+        verify(scheduler, times(2)).runAsyncOnceLater(eq(5L), any());
+    }
+
+    @Test
+    public void testCloseSavesPendingChanges() throws StorageException, IOException {
+        File file = directory.resolve("time.yml").toFile();
+        PluginScheduler scheduler = mock(PluginScheduler.class);
+        PluginTask pending = mock(PluginTask.class);
+        when(scheduler.runAsyncOnceLater(anyLong(), any())).thenReturn(pending);
+        DeferredFileSaver saver = new DeferredFileSaver(file, () -> "content", null, scheduler, 5, LOGGER);
+
+        saver.markDirty();
+        saver.close();
+
+        verify(pending).cancel();
+        assertEquals("content", read(file));
+    }
+
+    @Test
+    public void testZeroDelaySavesImmediately() throws StorageException, IOException {
+        File file = directory.resolve("names.yml").toFile();
+        PluginScheduler scheduler = mock(PluginScheduler.class);
+        DeferredFileSaver saver = new DeferredFileSaver(file, () -> "content", null, scheduler, 0, LOGGER);
+
+        saver.markDirty();
+
+        assertEquals("content", read(file));
+        verifyZeroInteractions(scheduler);
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
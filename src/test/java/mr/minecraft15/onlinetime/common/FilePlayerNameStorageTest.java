@@ -0,0 +1,80 @@
+package mr.minecraft15.onlinetime.common;
+
+import mr.minecraft15.onlinetime.api.FileStorageProvider;
+import mr.minecraft15.onlinetime.api.StorageException;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class FilePlayerNameStorageTest {
+
+    private static final UUID PLAYER = UUID.fromString("0b7bd8a4-8ab2-4d7b-9a53-2ac5a1f2ab7e");
+    private static final UUID OTHER_PLAYER = UUID.fromString("7e1a1bd2-6ce5-4c1c-9f0e-2b3cd1bf3b3e");
+
+    @Test
+    public void testLookupsUseIndexBuiltOnLoad() throws StorageException {
+        FileStorageProvider provider = mock(FileStorageProvider.class);
+        Map<String, Object> content = new HashMap<>();
+        content.put("Notch", PLAYER.toString());
+        content.put("jeb_", OTHER_PLAYER.toString());
+        doAnswer(invocation -> {
+            content.forEach(invocation.getArgument(0));
+            return null;
+        }).when(provider).forEach(any());
+        FilePlayerNameStorage storage = new FilePlayerNameStorage(provider);
+
+        assertEquals(Optional.of("Notch"), storage.getName(PLAYER));
+        assertEquals(Optional.of(OTHER_PLAYER), storage.getUuid("jeb_"));
+        assertEquals(Optional.empty(), storage.getUuid("Dinnerbone"));
+
+        storage.setEntry(PLAYER, "Dinnerbone");
+        verify(provider).write("Dinnerbone", PLAYER.toString());
+        assertEquals(Optional.of("Dinnerbone"), storage.getName(PLAYER));
+        assertEquals(Optional.of(PLAYER), storage.getUuid("Notch"));
+
+        storage.setEntry(OTHER_PLAYER, "Dinnerbone");
+        assertEquals(Optional.of(OTHER_PLAYER), storage.getUuid("Dinnerbone"));
+        assertEquals(Optional.of("Dinnerbone"), storage.getName(OTHER_PLAYER));
+        assertEquals(Optional.of("Notch"), storage.getName(PLAYER));
+
+        verify(provider, times(1)).forEach(any());
+        verify(provider, never()).readAll();
+        verify(provider, never()).read(anyString());
+    }
+
+    @Test
+    public void testNameWithOtherCaseReplacesStoredSpelling() throws StorageException {
+        FileStorageProvider provider = mock(FileStorageProvider.class);
+        FilePlayerNameStorage storage = new FilePlayerNameStorage(provider);
+        storage.setEntry(PLAYER, "Notch");
+
+        storage.setEntry(OTHER_PLAYER, "notch");
+
+        Map<String, String> expected = new HashMap<>();
+        expected.put("Notch", null);
+        expected.put("notch", OTHER_PLAYER.toString());
+        verify(provider).writeAll(expected);
+        assertEquals(Optional.of(OTHER_PLAYER), storage.getUuid("NOTCH"));
+
+        storage.setEntries(Collections.singletonMap(PLAYER, "NOTCH"));
+
+        expected.clear();
+        expected.put("notch", null);
+        expected.put("NOTCH", PLAYER.toString());
+        verify(provider).writeAll(expected);
+        assertEquals(Optional.of(PLAYER), storage.getUuid("notch"));
+        assertThrows(StorageException.class, () -> {
+            Map<UUID, String> duplicates = new HashMap<>();
+            duplicates.put(PLAYER, "jeb_");
+            duplicates.put(OTHER_PLAYER, "JEB_");
+            storage.setEntries(duplicates);
+        });
+    }
+}
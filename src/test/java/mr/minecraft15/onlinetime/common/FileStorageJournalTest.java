@@ -0,0 +1,89 @@
+package mr.minecraft15.onlinetime.common;
+
+import mr.minecraft15.onlinetime.api.StorageException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FileStorageJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testReplayReturnsLatestValues() throws StorageException {
+        File file = directory.resolve("time.yml.journal").toFile();
+        try (FileStorageJournal journal = new FileStorageJournal(file)) {
+            journal.append("a", 10L);
+            Map<String, Object> changes = new HashMap<>();
+            changes.put("a", 25L);
+            changes.put("b", "7e1a1bd2-6ce5-4c1c-9f0e-2b3cd1bf3b3e");
+            journal.append(changes);
+            journal.append("c", 3);
+            journal.append("c", null);
+        }
+        try (FileStorageJournal journal = new FileStorageJournal(file)) {
+            Map<String, Object> replayed = journal.replay();
+            assertEquals(3, replayed.size());
+            assertEquals(25L, replayed.get("a"));
+            assertEquals("7e1a1bd2-6ce5-4c1c-9f0e-2b3cd1bf3b3e", replayed.get("b"));
+            assertTrue(replayed.containsKey("c"));
+            assertNull(replayed.get("c"));
+        }
+    }
+
+    @Test
+    public void testDamagedTailIsDiscarded() throws StorageException, IOException {
+        File file = directory.resolve("time.yml.journal").toFile();
+        try (FileStorageJournal journal = new FileStorageJournal(file)) {
+            journal.append("a", 10L);
+            journal.append("b", 20L);
+        }
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.setLength(raw.length() - 3);
+        }
+        try (FileStorageJournal journal = new FileStorageJournal(file)) {
+            Map<String, Object> replayed = journal.replay();
+            assertEquals(1, replayed.size());
+            assertEquals(10L, replayed.get("a"));
+            journal.append("c", 30L);
+        }
+        try (FileStorageJournal journal = new FileStorageJournal(file)) {
+            Map<String, Object> replayed = journal.replay();
+            assertEquals(2, replayed.size());
+            assertEquals(30L, replayed.get("c"));
+        }
+    }
+
+    @Test
+    public void testTruncateKeepsRecordsAfterCheckpoint() throws StorageException {
+        File file = directory.resolve("names.yml.journal").toFile();
+        try (FileStorageJournal journal = new FileStorageJournal(file)) {
+            journal.append("a", 10L);
+            journal.checkpoint();
+            journal.append("b", 20L);
+            journal.truncateToCheckpoint();
+            journal.force();
+            journal.append("c", 30L);
+            journal.force();
+        }
+        try (FileStorageJournal journal = new FileStorageJournal(file)) {
+            Map<String, Object> replayed = journal.replay();
+            assertEquals(2, replayed.size());
+            assertFalse(replayed.containsKey("a"));
+            assertEquals(20L, replayed.get("b"));
+            assertEquals(30L, replayed.get("c"));
+            journal.checkpoint();
+            journal.truncateToCheckpoint();
+        }
+        assertEquals(0, file.length());
+    }
+}
@@ -0,0 +1,77 @@
+package mr.minecraft15.onlinetime.common;
+
+import mr.minecraft15.onlinetime.api.FileStorageProvider;
+import mr.minecraft15.onlinetime.api.StorageException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class LazyFileStorageProviderTest {
+
+    private static final String PLAYER = "0b7bd8a4-8ab2-4d7b-9a53-2ac5a1f2ab7e";
+    private static final String OTHER_PLAYER = "7e1a1bd2-6ce5-4c1c-9f0e-2b3cd1bf3b3e";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testEntriesAreReadFromIndexUntilLoaded() throws IOException, StorageException, InterruptedException {
+        Files.write(directory.resolve("time.yml"), Arrays.asList(
+                "# header",
+                PLAYER + ": 3600",
+                OTHER_PLAYER + ": 8589934592",
+                "'1234': Notch",
+                "jeb_: '" + PLAYER + "'"), StandardCharsets.UTF_8);
+        FileStorageProvider loaded = mock(FileStorageProvider.class);
+        CountDownLatch release = new CountDownLatch(1);
+        LazyFileStorageProvider provider = new LazyFileStorageProvider(directory.toFile(), "time.yml", fileName -> {
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                throw new StorageException(ex);
+            }
+            return loaded;
+        });
+
+        assertEquals(3600, provider.read(PLAYER));
+        assertEquals(8589934592L, provider.read(OTHER_PLAYER));
+        assertEquals("Notch", provider.read("1234"));
+        assertEquals(Collections.singletonMap("jeb_", PLAYER), provider.read(new HashSet<>(Arrays.asList("jeb_", "Dinnerbone"))));
+        assertNull(provider.read("Dinnerbone"));
+        Map<String, Object> visited = new HashMap<>();
+        provider.forEach(visited::put);
+        assertEquals(4, visited.size());
+        assertFalse(provider.isLoaded());
+
+        release.countDown();
+        provider.write(PLAYER, 7200L);
+        assertTrue(provider.isLoaded());
+        verify(loaded).write(PLAYER, 7200L);
+        provider.read(PLAYER);
+        verify(loaded).read(PLAYER);
+        provider.close();
+        verify(loaded).close();
+    }
+
+    @Test
+    public void testFilesWhichCanNotBeIndexedAreReadWhenLoaded() throws IOException, StorageException {
+        Files.write(directory.resolve("time.yml"), Arrays.asList(
+                PLAYER + ":",
+                "  nested: 1"), StandardCharsets.UTF_8);
+        FileStorageProvider loaded = mock(FileStorageProvider.class);
+        doReturn(1).when(loaded).read(PLAYER + ".nested");
+        LazyFileStorageProvider provider = new LazyFileStorageProvider(directory.toFile(), "time.yml", fileName -> loaded);
+
+        assertEquals(1, provider.read(PLAYER + ".nested"));
+        provider.close();
+    }
+}
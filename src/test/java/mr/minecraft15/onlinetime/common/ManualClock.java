@@ -0,0 +1,34 @@
+package mr.minecraft15.onlinetime.common;
+
+import mr.minecraft15.onlinetime.api.MonotonicClock;
+
+/**
+ * Clock for tests that only moves when told to. Its wall clock runs with a fixed offset.
+ */
+public class ManualClock implements MonotonicClock {
+
+    private volatile long millis;
+    private volatile long wallOffset;
+
+    public ManualClock(long millis) {
+        this.millis = millis;
+    }
+
+    public void advance(long millis) {
+        this.millis += millis;
+    }
+
+    public void setWallOffset(long wallOffset) {
+        this.wallOffset = wallOffset;
+    }
+
+    @Override
+    public long millis() {
+        return millis;
+    }
+
+    @Override
+    public long wallMillis() {
+        return millis + wallOffset;
+    }
+}
@@ -0,0 +1,57 @@
+package mr.minecraft15.onlinetime.common;
+
+import mr.minecraft15.onlinetime.api.StorageException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedOnlineTimeStorageTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testEntriesSurviveGrowthAndRestart() throws StorageException {
+        Random random = new Random(42);
+        Map<UUID, Long> expected = new HashMap<>();
+        MappedOnlineTimeStorage storage = new MappedOnlineTimeStorage(directory.toFile());
+        for (int batch = 0; batch < 10; batch++) {
+            Map<UUID, Long> additions = new HashMap<>();
+            for (int i = 0; i < 500; i++) {
+                UUID uuid = new UUID(random.nextLong(), random.nextLong());
+                long seconds = random.nextInt(10000);
+                additions.put(uuid, seconds);
+                expected.merge(uuid, seconds, Long::sum);
+            }
+            storage.addOnlineTimes(additions);
+        }
+        UUID first = expected.keySet().iterator().next();
+        storage.addOnlineTime(first, 5);
+        expected.merge(first, 5L, Long::sum);
+        assertEquals(expected.size(), storage.size());
+        storage.close();
+
+        MappedOnlineTimeStorage reopened = new MappedOnlineTimeStorage(directory.toFile());
+        assertEquals(expected.size(), reopened.size());
+        for (Map.Entry<UUID, Long> entry : expected.entrySet()) {
+            assertEquals(OptionalLong.of(entry.getValue()), reopened.getOnlineTime(entry.getKey()));
+        }
+        assertEquals(OptionalLong.empty(), reopened.getOnlineTime(new UUID(random.nextLong(), random.nextLong())));
+        reopened.close();
+    }
+
+    @Test
+    public void testNilUuidIsRejected() throws StorageException {
+        MappedOnlineTimeStorage storage = new MappedOnlineTimeStorage(directory.toFile());
+        assertThrows(StorageException.class, () -> storage.addOnlineTime(new UUID(0, 0), 10));
+        storage.close();
+    }
+}
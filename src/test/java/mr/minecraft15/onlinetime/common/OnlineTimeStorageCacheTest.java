@@ -0,0 +1,151 @@
+package mr.minecraft15.onlinetime.common;
+
+import mr.minecraft15.onlinetime.api.OnlineTimeStorage;
+import mr.minecraft15.onlinetime.api.PartialWriteException;
+import mr.minecraft15.onlinetime.api.StorageException;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.*;
+
+public class OnlineTimeStorageCacheTest {
+
+    private static final UUID PLAYER = UUID.fromString("0b7bd8a4-8ab2-4d7b-9a53-2ac5a1f2ab7e");
+    private static final UUID OTHER_PLAYER = UUID.fromString("5d0f3b8e-94a1-4c6e-8f7d-3b2a9c1e6f40");
+
+    @Test
+    public void testReadsAreServedFromMemory() throws StorageException {
+        OnlineTimeStorage storage = mock(OnlineTimeStorage.class);
+        when(storage.getOnlineTime(PLAYER)).thenReturn(OptionalLong.of(100));
+        OnlineTimeStorageCache cache = new OnlineTimeStorageCache(storage);
+
+        assertEquals(OptionalLong.of(100), cache.getOnlineTime(PLAYER));
+        cache.addOnlineTime(PLAYER, 20);
+        assertEquals(OptionalLong.of(120), cache.getOnlineTime(PLAYER));
+
+        verify(storage, times(1)).getOnlineTime(PLAYER);
+        verify(storage, never()).addOnlineTime(any(), anyLong());
+        verify(storage, never()).addOnlineTimes(anyMap());
+    }
+
+    @Test
+    public void testConcurrentLookupsShareOneStorageLookup() throws Exception {
+        OnlineTimeStorage storage = mock(OnlineTimeStorage.class);
+        CountDownLatch release = new CountDownLatch(1);
+        when(storage.getOnlineTime(PLAYER)).thenAnswer(invocation -> {
+            release.await();
+            return OptionalLong.of(42);
+        });
+        OnlineTimeStorageCache cache = new OnlineTimeStorageCache(storage);
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<OptionalLong>> lookups = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                lookups.add(callers.submit(() -> cache.getOnlineTime(PLAYER)));
+            }
+            while (cache.getCache().getMissCount() < 8) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            for (Future<OptionalLong> lookup : lookups) {
+                assertEquals(OptionalLong.of(42), lookup.get(5, TimeUnit.SECONDS));
+            }
+            verify(storage, times(1)).getOnlineTime(PLAYER);
+        } finally {
+            release.countDown();
+            callers.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFlushCoalescesAdditions() throws StorageException {
+        OnlineTimeStorage storage = mock(OnlineTimeStorage.class);
+        when(storage.getOnlineTime(PLAYER)).thenReturn(OptionalLong.empty());
+        OnlineTimeStorageCache cache = new OnlineTimeStorageCache(storage);
+
+        cache.addOnlineTime(PLAYER, 20);
+        cache.addOnlineTimes(Collections.singletonMap(PLAYER, 10L));
+        assertEquals(OptionalLong.of(30), cache.getOnlineTime(PLAYER));
+
+        cache.flush();
+        verify(storage).addOnlineTimes(Collections.singletonMap(PLAYER, 30L));
+        cache.flush();
+        verify(storage, times(1)).addOnlineTimes(anyMap());
+    }
+
+    @Test
+    public void testFailedFlushKeepsAdditions() throws StorageException {
+        OnlineTimeStorage storage = mock(OnlineTimeStorage.class);
+        doThrow(new StorageException("unavailable")).doNothing().when(storage).addOnlineTimes(anyMap());
+        OnlineTimeStorageCache cache = new OnlineTimeStorageCache(storage);
+
+        cache.addOnlineTime(PLAYER, 20);
+        assertThrows(StorageException.class, cache::flush);
+        cache.addOnlineTime(PLAYER, 5);
+        cache.close();
+
+        verify(storage, times(2)).addOnlineTimes(anyMap());
+        verify(storage).addOnlineTimes(Collections.singletonMap(PLAYER, 25L));
+        verify(storage).close();
+    }
+
+    @Test
+    public void testPartiallyFailedFlushKeepsOnlyUnwrittenAdditions() throws StorageException {
+        OnlineTimeStorage storage = mock(OnlineTimeStorage.class);
+        doThrow(new PartialWriteException(new StorageException("deadlock"), Collections.singleton(OTHER_PLAYER)))
+                .doNothing().when(storage).addOnlineTimes(anyMap());
+        OnlineTimeStorageCache cache = new OnlineTimeStorageCache(storage);
+
+        cache.addOnlineTime(PLAYER, 20);
+        cache.addOnlineTime(OTHER_PLAYER, 30);
+        assertThrows(PartialWriteException.class, cache::flush);
+        cache.flush();
+
+        Map<UUID, Long> all = new HashMap<>();
+        all.put(PLAYER, 20L);
+        all.put(OTHER_PLAYER, 30L);
+        InOrder inOrder = inOrder(storage);
+        inOrder.verify(storage).addOnlineTimes(all);
+        inOrder.verify(storage).addOnlineTimes(Collections.singletonMap(OTHER_PLAYER, 30L));
+        verify(storage, times(2)).addOnlineTimes(anyMap());
+    }
+
+    @Test
+    public void testCloseIsIdempotent() throws StorageException {
+        OnlineTimeStorage storage = mock(OnlineTimeStorage.class);
+        OnlineTimeStorageCache cache = new OnlineTimeStorageCache(storage);
+
+        cache.close();
+        cache.close();
+
+        verify(storage, times(1)).close();
+        assertThrows(StorageException.class, () -> cache.addOnlineTime(PLAYER, 1));
+    }
+
+    @Test
+    public void testBulkViewFlushesBeforeReadingAndInvalidatesReplacedTimes() throws StorageException {
+        BulkOnlineTimeStorage storage = mock(BulkOnlineTimeStorage.class);
+        when(storage.getOnlineTime(PLAYER)).thenReturn(OptionalLong.of(100), OptionalLong.of(500));
+        OnlineTimeStorageCache cache = new OnlineTimeStorageCache(storage);
+        BulkOnlineTimeStorage view = cache.bulkView(storage);
+
+        assertEquals(OptionalLong.of(100), cache.getOnlineTime(PLAYER));
+        cache.addOnlineTime(PLAYER, 20);
+        view.forEachOnlineTime((uuid, time) -> {});
+        InOrder order = inOrder(storage);
+        order.verify(storage).addOnlineTimes(Collections.singletonMap(PLAYER, 20L));
+        order.verify(storage).forEachOnlineTime(any());
+
+        view.setOnlineTimes(Collections.singletonMap(PLAYER, 500L));
+        verify(storage).setOnlineTimes(Collections.singletonMap(PLAYER, 500L));
+        assertEquals(OptionalLong.of(500), cache.getOnlineTime(PLAYER));
+        assertThrows(IllegalArgumentException.class, () -> cache.bulkView(mock(BulkOnlineTimeStorage.class)));
+    }
+}
@@ -0,0 +1,46 @@
+package mr.minecraft15.onlinetime.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PlayerNameIndexTest {
+
+    private static final UUID PLAYER = UUID.fromString("0b7bd8a4-8ab2-4d7b-9a53-2ac5a1f2ab7e");
+    private static final UUID OTHER_PLAYER = UUID.fromString("7e1a1bd2-6ce5-4c1c-9f0e-2b3cd1bf3b3e");
+
+    @Test
+    public void testLookupIgnoresCase() {
+        PlayerNameIndex index = new PlayerNameIndex();
+        index.put(PLAYER, "Notch");
+
+        assertEquals(Optional.of(PLAYER), index.getUuid("notch"));
+        assertEquals(Optional.of(PLAYER), index.getUuid("NOTCH"));
+
+        index.put(OTHER_PLAYER, "notch");
+        assertEquals(Optional.of(OTHER_PLAYER), index.getUuid("Notch"));
+        assertEquals(Optional.of("notch"), index.getName(OTHER_PLAYER));
+        assertEquals(Optional.empty(), index.getName(PLAYER));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void testFindNamesByPrefix() {
+        PlayerNameIndex index = new PlayerNameIndex();
+        index.put(UUID.randomUUID(), "jeb_");
+        index.put(UUID.randomUUID(), "Jeanne");
+        index.put(UUID.randomUUID(), "JEFF");
+        index.put(UUID.randomUUID(), "Dinnerbone");
+        index.put(UUID.randomUUID(), "je");
+
+        assertEquals(Arrays.asList("je", "Jeanne", "jeb_", "JEFF"), index.findNames("Je", 10));
+        assertEquals(Arrays.asList("je", "Jeanne"), index.findNames("je", 2));
+        assertEquals(Collections.singletonList("JEFF"), index.findNames("jef", 10));
+        assertEquals(Collections.emptyList(), index.findNames("x", 10));
+    }
+}
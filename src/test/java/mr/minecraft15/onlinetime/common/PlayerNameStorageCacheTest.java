@@ -0,0 +1,71 @@
+package mr.minecraft15.onlinetime.common;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class PlayerNameStorageCacheTest {
+
+    private static final UUID PLAYER = UUID.fromString("0b7bd8a4-8ab2-4d7b-9a53-2ac5a1f2ab7e");
+    private static final UUID OTHER_PLAYER = UUID.fromString("5d0f3b8e-94a1-4c6e-8f7d-3b2a9c1e6f40");
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @AfterEach
+    public void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    private static PlayerNameStorageCache createCache(PlayerNameStorage storage) {
+        return new PlayerNameStorageCache(storage, new BoundedExpiringCache<>(100, 0, 0, TimeUnit.SECONDS),
+                new BoundedExpiringCache<>(100, 0, 0, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testLookupsAreServedFromMemoryCaseInsensitively() throws Exception {
+        PlayerNameStorage storage = mock(PlayerNameStorage.class);
+        when(storage.getUuid("Notch")).thenReturn(Optional.of(PLAYER));
+        PlayerNameStorageCache cache = createCache(storage);
+
+        assertEquals(Optional.of(PLAYER), cache.getUuid("Notch"));
+        assertEquals(Optional.of(PLAYER), cache.getUuid("notch"));
+
+        verify(storage, times(1)).getUuid(anyString());
+    }
+
+    @Test
+    public void testLookupDuringWriteOfSameNameDoesNotDeadlock() throws Exception {
+        PlayerNameStorage storage = mock(PlayerNameStorage.class);
+        when(storage.getUuid("Notch")).thenReturn(Optional.of(OTHER_PLAYER));
+        CountDownLatch writing = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            writing.countDown();
+            // give the lookup time to start loading the name the write is about to invalidate
+            Thread.sleep(200);
+            return null;
+        }).when(storage).setEntry(PLAYER, "Notch");
+        PlayerNameStorageCache cache = createCache(storage);
+
+        Future<?> write = executor.submit(() -> {
+            cache.setEntry(PLAYER, "Notch");
+            return null;
+        });
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        Future<Optional<UUID>> lookup = executor.submit(() -> cache.getUuid("Notch"));
+
+        write.get(5, TimeUnit.SECONDS);
+        lookup.get(5, TimeUnit.SECONDS);
+        assertEquals(Optional.of(PLAYER), cache.getUuid("Notch"));
+        assertEquals(Optional.of("Notch"), cache.getName(PLAYER));
+    }
+}
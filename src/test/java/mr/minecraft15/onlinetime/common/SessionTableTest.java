@@ -0,0 +1,106 @@
+package mr.minecraft15.onlinetime.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SessionTableTest {
+
+    @Test
+    public void testPutGetRemove() {
+        SessionTable table = new SessionTable();
+        UUID uuid = UUID.randomUUID();
+
+        assertTrue(table.isEmpty());
+        assertEquals(SessionTable.ABSENT, table.put(uuid, 5));
+        assertEquals(5, table.put(uuid, 7));
+        assertEquals(7, table.get(uuid));
+        assertTrue(table.addIfPresent(uuid, -2));
+        assertEquals(5, table.remove(uuid));
+        assertEquals(SessionTable.ABSENT, table.get(uuid));
+        assertFalse(table.addIfPresent(uuid, 1));
+        assertTrue(table.isEmpty());
+    }
+
+    @Test
+    public void testMatchesHashMap() {
+        Random random = new Random(42);
+        SessionTable table = new SessionTable();
+        Map<UUID, Long> expected = new HashMap<>();
+        List<UUID> uuids = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            uuids.add(new UUID(random.nextLong(), random.nextLong()));
+        }
+
+        for (int i = 0; i < 100_000; i++) {
+            UUID uuid = uuids.get(random.nextInt(uuids.size()));
+            long value = random.nextInt(1_000_000);
+            switch (random.nextInt(3)) {
+                case 0:
+                    assertEquals(expected.getOrDefault(uuid, SessionTable.ABSENT), table.put(uuid, value));
+                    expected.put(uuid, value);
+                    break;
+                case 1:
+                    assertEquals(expected.getOrDefault(uuid, SessionTable.ABSENT), table.remove(uuid));
+                    expected.remove(uuid);
+                    break;
+                default:
+                    assertEquals(expected.getOrDefault(uuid, SessionTable.ABSENT), table.get(uuid));
+            }
+        }
+        assertEquals(expected.size(), table.size());
+
+        Map<UUID, Long> drained = new HashMap<>();
+        table.removeAll((msb, lsb, value) -> drained.put(new UUID(msb, lsb), value));
+        assertEquals(expected, drained);
+        assertTrue(table.isEmpty());
+    }
+
+    @Test
+    public void testConcurrentReplaceNeitherLosesNorRepeatsUpdates() throws InterruptedException {
+        SessionTable table = new SessionTable();
+        List<UUID> sessions = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            UUID uuid = UUID.randomUUID();
+            sessions.add(uuid);
+            table.put(uuid, 0);
+        }
+        Map<UUID, Integer> index = new HashMap<>();
+        for (int i = 0; i < sessions.size(); i++) {
+            index.put(sessions.get(i), i);
+        }
+        AtomicLongArray replacements = new AtomicLongArray(sessions.size());
+        AtomicBoolean running = new AtomicBoolean(true);
+
+        Thread writer = new Thread(() -> {
+            Random random = new Random(7);
+            List<UUID> others = new ArrayList<>();
+            while (running.get()) {
+                UUID uuid = sessions.get(random.nextInt(sessions.size()));
+                long value = table.remove(uuid);
+                table.put(uuid, value); // rejoin keeps the value, so every replacement must stay visible
+                UUID other = UUID.randomUUID();
+                table.put(other, 1);
+                others.add(other);
+                if (others.size() > 200) {
+                    table.remove(others.remove(random.nextInt(others.size())));
+                }
+            }
+        });
+        writer.start();
+        for (int round = 0; round < 2000; round++) {
+            table.replaceAll((msb, lsb, value) -> index.containsKey(new UUID(msb, lsb)) ? value + 1 : value,
+                    (msb, lsb, from, to) -> replacements.incrementAndGet(index.get(new UUID(msb, lsb))));
+        }
+        running.set(false);
+        writer.join();
+
+        for (int i = 0; i < sessions.size(); i++) {
+            assertEquals(replacements.get(i), table.get(sessions.get(i)));
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package mr.minecraft15.onlinetime.common;
+
+import mr.minecraft15.onlinetime.api.FileStorageProvider;
+import mr.minecraft15.onlinetime.api.StorageException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ShardedFileStorageProviderTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testPathsAreSpreadOverShards() throws StorageException {
+        List<MapFileStorageProvider> shards = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            shards.add(new MapFileStorageProvider(directory.resolve("time-" + i + "-of-4.bin").toFile()));
+        }
+        ShardedFileStorageProvider provider = new ShardedFileStorageProvider(shards);
+        Map<String, Long> data = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            data.put(new UUID(i, i).toString(), (long) i);
+        }
+        provider.writeAll(data);
+        provider.write(new UUID(7, 7).toString(), 70L);
+        data.put(new UUID(7, 7).toString(), 70L);
+
+        assertEquals(data, provider.readAll());
+        assertEquals(70L, provider.read(new UUID(7, 7).toString()));
+        assertEquals(Collections.singletonMap(new UUID(3, 3).toString(), 3L),
+                provider.read(new HashSet<>(Arrays.asList(new UUID(3, 3).toString(), "unknown"))));
+        for (MapFileStorageProvider shard : shards) {
+            assertTrue(shard.content.size() > 0 && shard.content.size() < 100);
+        }
+    }
+
+    @Test
+    public void testDataIsMovedWhenShardCountChanges() throws StorageException {
+        File dataFolder = directory.toFile();
+        FileStorageProvider single = ShardedFileStorageProvider.open(dataFolder, "time", "bin", 1, this::create);
+        Map<String, Long> data = new HashMap<>();
+        for (int i = 0; i < 50; i++) {
+            data.put(new UUID(i, -i).toString(), (long) i * 10);
+        }
+        single.writeAll(data);
+        single.close();
+
+        FileStorageProvider sharded = ShardedFileStorageProvider.open(dataFolder, "time", "bin", 3, this::create);
+        assertEquals(data, sharded.readAll());
+        sharded.close();
+        assertFalse(new File(dataFolder, "time.bin").exists());
+        assertTrue(new File(dataFolder, "time.bin.resharded").exists());
+
+        FileStorageProvider resharded = ShardedFileStorageProvider.open(dataFolder, "time", "bin", 5, this::create);
+        assertEquals(data, resharded.readAll());
+        resharded.close();
+        assertFalse(new File(dataFolder, "time-0-of-3.bin").exists());
+    }
+
+    private FileStorageProvider create(String fileName) throws StorageException {
+        return new MapFileStorageProvider(directory.resolve(fileName).toFile());
+    }
+
+    private static class MapFileStorageProvider implements FileStorageProvider {
+
+        private final File file;
+        private final Map<String, Object> content;
+
+        @SuppressWarnings("unchecked")
+        MapFileStorageProvider(File file) throws StorageException {
+            this.file = file;
+            if (file.exists()) {
+                try (ObjectInputStream input = new ObjectInputStream(new FileInputStream(file))) {
+                    this.content = (Map<String, Object>) input.readObject();
+                } catch (IOException | ClassNotFoundException ex) {
+                    throw new StorageException(ex);
+                }
+            } else {
+                this.content = new HashMap<>();
+                close();
+            }
+        }
+
+        @Override
+        public Object read(String path) {
+            return content.get(path);
+        }
+
+        @Override
+        public Map<String, ?> read(Set<String> paths) {
+            Map<String, Object> result = new HashMap<>();
+            for (String path : paths) {
+                if (content.containsKey(path)) {
+                    result.put(path, content.get(path));
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public void write(String path, Object data) {
+            content.put(path, data);
+        }
+
+        @Override
+        public void delete(String path) {
+            content.remove(path);
+        }
+
+        @Override
+        public Map<String, ?> readAll() {
+            return new HashMap<>(content);
+        }
+
+        @Override
+        public void writeAll(Map<String, ?> data) {
+            content.putAll(data);
+        }
+
+        @Override
+        public void close() throws StorageException {
+            try (ObjectOutputStream output = new ObjectOutputStream(new FileOutputStream(file))) {
+                output.writeObject(new HashMap<>(content));
+            } catch (IOException ex) {
+                throw new StorageException(ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package mr.minecraft15.onlinetime.common;
+
+import mr.minecraft15.onlinetime.api.PluginScheduler;
+import mr.minecraft15.onlinetime.api.PluginTask;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+public class StorageExecutorTest {
+
+    private final StorageExecutor executor = new StorageExecutor("test", 1, 1, false);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    public void shutdownExecutor() throws InterruptedException {
+        release.countDown();
+        executor.shutdown(5, TimeUnit.SECONDS);
+    }
+
+    private void saturate() throws InterruptedException {
+        CountDownLatch running = new CountDownLatch(1);
+        executor.execute(() -> {
+            running.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        executor.execute(() -> {});
+    }
+
+    @Test
+    public void testRejectsOrHandsOverTasksWhenSaturated() throws Exception {
+        saturate();
+        assertEquals(2, executor.getPendingCount());
+        assertEquals(1, executor.getActiveCount());
+
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> {}));
+        AtomicInteger fallbackRuns = new AtomicInteger();
+        executor.executeOrElse(fallbackRuns::incrementAndGet, Runnable::run);
+
+        assertEquals(1, fallbackRuns.get());
+        assertEquals(2, executor.getRejectedCount());
+        release.countDown();
+        assertTrue(executor.shutdown(5, TimeUnit.SECONDS));
+        assertEquals(2, executor.getCompletedCount());
+        assertEquals(0, executor.getPendingCount());
+    }
+
+    @Test
+    public void testSchedulerRunsTimedTasksOnExecutorUntilCancelled() throws Exception {
+        PluginScheduler serverScheduler = mock(PluginScheduler.class);
+        PluginTask timer = mock(PluginTask.class);
+        Runnable[] tick = new Runnable[1];
+        doAnswer(invocation -> {
+            tick[0] = invocation.getArgument(2);
+            return timer;
+        }).when(serverScheduler).scheduleAsync(anyLong(), anyLong(), any());
+        StorageScheduler scheduler = new StorageScheduler(serverScheduler, executor);
+        CountDownLatch runs = new CountDownLatch(2);
+        String[] threadName = new String[1];
+
+        PluginTask task = scheduler.scheduleAsync(1, 1, () -> {
+            threadName[0] = Thread.currentThread().getName();
+            runs.countDown();
+        });
+        tick[0].run();
+        tick[0].run();
+        assertTrue(runs.await(5, TimeUnit.SECONDS));
+        task.cancel();
+        tick[0].run();
+
+        assertEquals("OnlineTime test storage 1", threadName[0]);
+        verify(timer).cancel();
+        release.countDown();
+        assertTrue(executor.shutdown(5, TimeUnit.SECONDS));
+        assertEquals(2, executor.getCompletedCount());
+    }
+}
@@ -0,0 +1,167 @@
+package mr.minecraft15.onlinetime.common;
+
+import mr.minecraft15.onlinetime.api.StorageException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.*;
+
+public class StorageMigrationTest {
+
+    private static final int PLAYERS = 25;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testCopiesNamesAndTimes() throws StorageException {
+        File sourceDirectory = createSource();
+        File targetDirectory = new File(directory.toFile(), "target");
+        StorageMigration migration = new StorageMigration("binlog", "mmap", 10, directory.toFile());
+        assertFalse(migration.isResumed());
+
+        long copied = migration.run((storage, withNames) -> openBackend(storage, sourceDirectory, targetDirectory), (names, count) -> {});
+
+        assertEquals(2 * PLAYERS, copied);
+        assertFalse(migration.isResumed());
+        try (MappedOnlineTimeStorage times = new MappedOnlineTimeStorage(targetDirectory);
+             BinaryLogStorage names = new BinaryLogStorage(new File(targetDirectory, "names"))) {
+            for (int i = 0; i < PLAYERS; i++) {
+                assertEquals(OptionalLong.of(i * 60L), times.getOnlineTime(player(i)));
+                assertEquals(Optional.of("player" + i), names.getName(player(i)));
+            }
+        }
+    }
+
+    @Test
+    public void testResumesInterruptedMigration() throws StorageException {
+        File sourceDirectory = createSource();
+        File targetDirectory = new File(directory.toFile(), "target");
+        BulkOnlineTimeStorage failingTarget = mock(BulkOnlineTimeStorage.class);
+        AtomicInteger writes = new AtomicInteger();
+        doAnswer(invocation -> {
+            if (writes.incrementAndGet() > 1) {
+                throw new StorageException("disk full");
+            }
+            return null;
+        }).when(failingTarget).setOnlineTimes(anyMap());
+
+        StorageMigration interrupted = new StorageMigration("binlog", "mmap", 10, directory.toFile());
+        assertThrows(StorageException.class, () -> interrupted.run((storage, withNames) -> "mmap".equals(storage)
+                ? new StorageMigration.Backend(failingTarget, false, new BinaryLogStorage(new File(targetDirectory, "names")), true)
+                : openBackend(storage, sourceDirectory, targetDirectory), (names, count) -> {}));
+
+        StorageMigration resumed = new StorageMigration("binlog", "mmap", 10, directory.toFile());
+        assertTrue(resumed.isResumed());
+        assertEquals(2 * PLAYERS, resumed.run((storage, withNames) -> openBackend(storage, sourceDirectory, targetDirectory), (names, count) -> {}));
+        assertFalse(resumed.isResumed());
+        try (MappedOnlineTimeStorage times = new MappedOnlineTimeStorage(targetDirectory)) {
+            assertEquals(PLAYERS - 10, times.size(), "first batch must not be copied twice");
+        }
+    }
+
+    @Test
+    public void testResumesAfterLastCopiedPlayerWhenSourceChanged() throws StorageException {
+        Map<UUID, Long> sourceTimes = new TreeMap<>(UuidUtil.BYTE_ORDER);
+        for (int i = 0; i < PLAYERS; i++) {
+            sourceTimes.put(player(i), i * 60L);
+        }
+        BulkOnlineTimeStorage source = mockSource(sourceTimes);
+        BulkOnlineTimeStorage target = mock(BulkOnlineTimeStorage.class);
+        Map<UUID, Long> written = new HashMap<>();
+        AtomicInteger writes = new AtomicInteger();
+        doAnswer(invocation -> {
+            if (writes.incrementAndGet() == 2) {
+                throw new StorageException("disk full");
+            }
+            written.putAll(invocation.getArgument(0));
+            return null;
+        }).when(target).setOnlineTimes(anyMap());
+        StorageMigration.BackendOpener opener = (storage, withNames) -> new StorageMigration.Backend("yaml".equals(storage) ? source : target, false, null, false);
+
+        assertThrows(StorageException.class, () -> new StorageMigration("yaml", "mmap", 10, directory.toFile()).run(opener, (names, count) -> {}));
+        sourceTimes.remove(player(3));
+        assertEquals(PLAYERS, new StorageMigration("yaml", "mmap", 10, directory.toFile()).run(opener, (names, count) -> {}));
+
+        assertEquals(PLAYERS, written.size());
+        assertTrue(written.entrySet().containsAll(sourceTimes.entrySet()), "no player after the removed one may be skipped");
+    }
+
+    @Test
+    public void testRefusesUnorderedSource() throws StorageException {
+        Map<UUID, Long> sourceTimes = new LinkedHashMap<>();
+        sourceTimes.put(player(1), 60L);
+        sourceTimes.put(player(0), 0L);
+        BulkOnlineTimeStorage source = mockSource(sourceTimes);
+        BulkOnlineTimeStorage target = mock(BulkOnlineTimeStorage.class);
+
+        assertThrows(StorageException.class, () -> new StorageMigration("yaml", "mmap", 10, directory.toFile())
+                .run((storage, withNames) -> new StorageMigration.Backend("yaml".equals(storage) ? source : target, false, null, false), (names, count) -> {}));
+    }
+
+    @Test
+    public void testStoragesListPlayersInByteOrder() throws StorageException {
+        File sourceDirectory = new File(directory.toFile(), "source");
+        List<UUID> players = Arrays.asList(new UUID(-1, 0), new UUID(1, -1), new UUID(1, 1), new UUID(0, 5));
+        try (BinaryLogStorage storage = new BinaryLogStorage(sourceDirectory)) {
+            for (UUID uuid : players) {
+                storage.addOnlineTime(uuid, 1);
+                storage.setEntry(uuid, "player" + uuid.getLeastSignificantBits());
+            }
+            List<UUID> expected = new ArrayList<>(players);
+            expected.sort(UuidUtil.BYTE_ORDER);
+            List<UUID> timeOrder = new ArrayList<>();
+            storage.forEachOnlineTime((uuid, time) -> timeOrder.add(uuid));
+            List<UUID> nameOrder = new ArrayList<>();
+            storage.forEachEntry((uuid, name) -> nameOrder.add(uuid));
+            assertEquals(Arrays.asList(new UUID(0, 5), new UUID(1, 1), new UUID(1, -1), new UUID(-1, 0)), expected);
+            assertEquals(expected, timeOrder);
+            assertEquals(expected, nameOrder);
+        }
+    }
+
+    private static BulkOnlineTimeStorage mockSource(Map<UUID, Long> onlineTimes) throws StorageException {
+        BulkOnlineTimeStorage source = mock(BulkOnlineTimeStorage.class);
+        doAnswer(invocation -> {
+            BiConsumer<UUID, Long> consumer = invocation.getArgument(0);
+            onlineTimes.forEach(consumer);
+            return null;
+        }).when(source).forEachOnlineTime(any());
+        return source;
+    }
+
+    private File createSource() throws StorageException {
+        File sourceDirectory = new File(directory.toFile(), "source");
+        try (BinaryLogStorage source = new BinaryLogStorage(sourceDirectory)) {
+            Map<UUID, Long> times = new HashMap<>();
+            for (int i = 0; i < PLAYERS; i++) {
+                times.put(player(i), i * 60L);
+                source.setEntry(player(i), "player" + i);
+            }
+            source.addOnlineTimes(times);
+        }
+        return sourceDirectory;
+    }
+
+    private static StorageMigration.Backend openBackend(String storage, File sourceDirectory, File targetDirectory) throws StorageException {
+        if ("binlog".equals(storage)) {
+            BinaryLogStorage source = new BinaryLogStorage(sourceDirectory);
+            return new StorageMigration.Backend(source, true, source, true);
+        }
+        return new StorageMigration.Backend(new MappedOnlineTimeStorage(targetDirectory), true,
+                new BinaryLogStorage(new File(targetDirectory, "names")), true);
+    }
+
+    private static UUID player(int i) {
+        return new UUID(0x0123456789abcdefL, i);
+    }
+}